@@ -0,0 +1,195 @@
+//Worst-case search: like pickMoveLookahead, but the next piece is assumed to be the worst
+//one for us (min over the 7 pieces) instead of averaging over them. Depth counts
+//placements as in ExpectimaxSearch: depth 2 is the adversarial version of the 2-ply
+//lookahead, and every further level adds another min node over pieces and max node
+//over moves.
+//
+//Being a min/max tree, it is searched with alpha-beta. Moves at max nodes are tried best
+//1-ply heuristic first, and at each min node the piece that was worst at that ply last
+//time is tried first. With pruning off the same tree is searched exhaustively in the same
+//order, so both modes return the same move and the counters show what pruning saves.
+class AdversarialSearch {
+	public static final int N_PIECES = State.N_PIECES;
+	private static final int MAX_MOVES = 64;
+
+	private final PlayerSkeleton player;
+	//placements searched, at least 1 - depth 1 is the greedy 1-ply pick
+	public int depth;
+	public boolean pruning = true;
+
+	private NextState ns = new NextState();
+	private MoveUndo[] undo;
+	private double[] features = new double[Features.NUM_FEATURES];
+	//move order and 1-ply scores at each ply
+	private int[][] order;
+	private double[][] scores;
+	//worst piece found at each ply
+	private int[] killer;
+
+	private long nodes, leaves, orderingEvals, cutoffs;
+	private double bestValue;
+
+	public AdversarialSearch(PlayerSkeleton player, int depth) {
+		this.player = player;
+		this.depth = depth;
+		checkDepth();
+		allocate();
+	}
+
+	private void checkDepth() {
+		if (depth < 1)
+			throw new IllegalArgumentException("adversarial depth must be at least 1: " + depth);
+	}
+
+	private void allocate() {
+		undo = new MoveUndo[depth];
+		for (int i = 0; i < depth; i++)
+			undo[i] = new MoveUndo();
+		order = new int[depth][MAX_MOVES];
+		scores = new double[depth][MAX_MOVES];
+		killer = new int[depth];
+	}
+
+	int pickMove(BitBoard root, int piece, int[][] legalMoves) {
+		checkDepth();
+		if (undo.length < depth)
+			allocate();
+		ns.reset(root, piece, 0);
+
+		int n = orderMoves(piece, legalMoves, 0);
+		int[] ord = order[0];
+		int bestMove = ord[0];
+		double alpha = Integer.MIN_VALUE;
+		for (int t = 0; t < n; t++) {
+			int i = ord[t];
+			double currValue;
+			if (depth == 1) {
+				currValue = scores[0][t];
+			}
+			else {
+				ns.applyMove(piece, legalMoves[i][State.ORIENT], legalMoves[i][State.SLOT], undo[0]);
+				currValue = value(1, alpha, Double.POSITIVE_INFINITY);
+				ns.undoMove(undo[0]);
+			}
+			if (currValue > alpha) {
+				alpha = currValue;
+				bestMove = i;
+			}
+		}
+		bestValue = alpha;
+		return bestMove;
+	}
+
+	//value of ns after placed moves - a min node over the next piece
+	private double value(int placed, double alpha, double beta) {
+		nodes++;
+		if (ns.hasLost())
+			return Integer.MIN_VALUE;
+		if (placed == depth) {
+			leaves++;
+			return player.getHeuristic(ns, features);
+		}
+
+		double v = Double.POSITIVE_INFINITY;
+		int first = killer[placed];
+		for (int t = 0; t < N_PIECES; t++) {
+			int j = (first + t) % N_PIECES;
+			double pieceValue = maxValue(j, placed, alpha, Math.min(beta, v));
+			if (pieceValue < v) {
+				v = pieceValue;
+				killer[placed] = j;
+			}
+			if (pruning && v <= alpha) {
+				cutoffs++;
+				return v;
+			}
+		}
+		return v;
+	}
+
+	//max node - best value over the placements of the given piece
+	private double maxValue(int piece, int placed, double alpha, double beta) {
+		int[][] legalMoves = PieceCatalog.legalMoves[piece];
+		double v = Integer.MIN_VALUE;
+		if (placed + 1 == depth) {
+			//children are leaves - scoring them is the search, so there is nothing to order
+			for (int k = 0; k < legalMoves.length; k++) {
+				ns.applyMove(piece, legalMoves[k][State.ORIENT], legalMoves[k][State.SLOT], undo[placed]);
+				double currValue = value(placed + 1, Math.max(alpha, v), beta);
+				ns.undoMove(undo[placed]);
+				if (currValue > v)
+					v = currValue;
+				if (pruning && v >= beta) {
+					cutoffs++;
+					return v;
+				}
+			}
+			return v;
+		}
+
+		int n = orderMoves(piece, legalMoves, placed);
+		int[] ord = order[placed];
+		for (int t = 0; t < n; t++) {
+			int k = ord[t];
+			ns.applyMove(piece, legalMoves[k][State.ORIENT], legalMoves[k][State.SLOT], undo[placed]);
+			double currValue = value(placed + 1, Math.max(alpha, v), beta);
+			ns.undoMove(undo[placed]);
+			if (currValue > v)
+				v = currValue;
+			if (pruning && v >= beta) {
+				cutoffs++;
+				return v;
+			}
+		}
+		return v;
+	}
+
+	//sorts the moves of piece into order[ply], best 1-ply heuristic first, ties in legalMoves order
+	private int orderMoves(int piece, int[][] legalMoves, int ply) {
+		int n = legalMoves.length;
+		int[] ord = order[ply];
+		double[] sc = scores[ply];
+		for (int k = 0; k < n; k++) {
+			ns.applyMove(piece, legalMoves[k][State.ORIENT], legalMoves[k][State.SLOT], undo[ply]);
+			double s = player.getHeuristic(ns, features);
+			ns.undoMove(undo[ply]);
+			orderingEvals++;
+			//insertion sort, descending and stable
+			int t = k;
+			while (t > 0 && sc[t-1] < s) {
+				sc[t] = sc[t-1];
+				ord[t] = ord[t-1];
+				t--;
+			}
+			sc[t] = s;
+			ord[t] = k;
+		}
+		return n;
+	}
+
+	//worst-case value of the move chosen by the last pickMove
+	public double getBestValue() {
+		return bestValue;
+	}
+
+	//min nodes and leaves visited, not counting the 1-ply evaluations used for move ordering
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getLeaves() {
+		return leaves;
+	}
+
+	public long getOrderingEvals() {
+		return orderingEvals;
+	}
+
+	public long getCutoffs() {
+		return cutoffs;
+	}
+
+	public void resetCounters() {
+		nodes = leaves = orderingEvals = cutoffs = 0;
+	}
+}
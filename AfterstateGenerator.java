@@ -0,0 +1,112 @@
+//Generates every afterstate of a board - every piece, orientation and slot - in one call.
+//The landing row of a placement only depends on the column tops under it and the piece's
+//bottom profile, and several (piece, orientation) pairs share a profile (19 orientations,
+//13 profiles), so landing rows are worked out once per profile and slot for the board and
+//reused. Each afterstate is then made in place on a scratch board, its feature vector is
+//written straight into the caller's Buffer, and the move is undone.
+class AfterstateGenerator {
+	public static final int N_PIECES = State.N_PIECES;
+	public static final int COLS = State.COLS;
+	public static final int NUM_FEATURES = Features.NUM_FEATURES;
+
+	//number of afterstates of one board - every legal move of every piece
+	public static final int MAX_AFTERSTATES;
+
+	//bottom profile of each [piece][orientation], and one example of each distinct profile
+	private static final int[][] profileOf = new int[N_PIECES][];
+	private static final int N_PROFILES;
+	private static final int[][] profileBottom;
+
+	static {
+		int total = 0;
+		int[][] distinct = new int[32][];
+		int n = 0;
+		for (int p = 0; p < N_PIECES; p++) {
+			total += PieceCatalog.legalMoves[p].length;
+			profileOf[p] = new int[PieceCatalog.pOrients[p]];
+			for (int o = 0; o < PieceCatalog.pOrients[p]; o++) {
+				int[] bottom = PieceCatalog.pBottom[p][o];
+				int id = 0;
+				while (id < n && !java.util.Arrays.equals(distinct[id], bottom))
+					id++;
+				if (id == n)
+					distinct[n++] = bottom;
+				profileOf[p][o] = id;
+			}
+		}
+		MAX_AFTERSTATES = total;
+		N_PROFILES = n;
+		profileBottom = java.util.Arrays.copyOf(distinct, n);
+	}
+
+	//Where generate(...) writes its afterstates - allocate once and reuse.
+	//Afterstate i is move moveIndex[i] of piece[i] (an index into that piece's legalMoves);
+	//afterstates of piece p are the index range [pieceStart[p], pieceStart[p+1]).
+	public static class Buffer {
+		public int count;
+		public int[] pieceStart = new int[N_PIECES + 1];
+		public int[] piece = new int[MAX_AFTERSTATES];
+		public int[] moveIndex = new int[MAX_AFTERSTATES];
+		public int[] landingHeight = new int[MAX_AFTERSTATES];
+		//rows cleared by this placement alone
+		public int[] rowsCleared = new int[MAX_AFTERSTATES];
+		//lost afterstates have no features
+		public boolean[] lost = new boolean[MAX_AFTERSTATES];
+		//features of afterstate i are at [i*NUM_FEATURES, (i+1)*NUM_FEATURES), laid out as in Features
+		public double[] features = new double[MAX_AFTERSTATES * NUM_FEATURES];
+	}
+
+	private final ColumnKernels kernels;
+	private BitBoard scratch = new BitBoard();
+	private MoveUndo undo = new MoveUndo();
+	//landing row by [profile][slot] for the current board
+	private int[][] landing = new int[N_PROFILES][COLS];
+
+	public AfterstateGenerator() {
+		this(ColumnKernels.scalar());
+	}
+
+	//kernels computes the landing rows and features, e.g. ColumnKernels.best() for SIMD
+	public AfterstateGenerator(ColumnKernels kernels) {
+		this.kernels = kernels;
+	}
+
+	//fills out with every afterstate of board, for all pieces, and returns how many there are
+	public int generate(BitBoard board, Buffer out) {
+		scratch.copyFrom(board);
+		int[] top = scratch.top;
+
+		//landing rows for every profile and slot, shared by the pieces with that profile
+		for (int id = 0; id < N_PROFILES; id++)
+			kernels.landingHeights(top, profileBottom[id], landing[id]);
+
+		int n = 0;
+		for (int p = 0; p < N_PIECES; p++) {
+			out.pieceStart[p] = n;
+			int[][] legalMoves = PieceCatalog.legalMoves[p];
+			for (int i = 0; i < legalMoves.length; i++) {
+				int orient = legalMoves[i][State.ORIENT];
+				int slot = legalMoves[i][State.SLOT];
+				int height = landing[profileOf[p][orient]][slot];
+				out.piece[n] = p;
+				out.moveIndex[n] = i;
+				out.landingHeight[n] = height;
+				int before = scratch.cleared;
+				if (scratch.placeAt(p, orient, slot, height, undo)) {
+					out.lost[n] = false;
+					out.rowsCleared[n] = scratch.cleared - before;
+					kernels.extract(scratch, out.features, n * NUM_FEATURES);
+				}
+				else {
+					out.lost[n] = true;
+					out.rowsCleared[n] = 0;
+				}
+				scratch.undo(undo);
+				n++;
+			}
+		}
+		out.pieceStart[N_PIECES] = n;
+		out.count = n;
+		return n;
+	}
+}
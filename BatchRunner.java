@@ -0,0 +1,180 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Headless batch mode: plays many games with one weight vector on every core and reports
+//engine throughput and policy quality. No TFrame is opened.
+//
+//usage: java BatchRunner <games> [seed] [w0 w1 w2 w3 w4 w5]
+//
+//Prints a summary and writes one line per game to batch_results.csv.
+//The piece sequence of every game depends only on the seed, not on the number of threads.
+public class BatchRunner
+{
+	public static final String RESULTS_FILE = "batch_results.csv";
+	//games handed to one worker at a time are played in lockstep, at most MAX_CHUNK_SIZE of them,
+	//and small enough that every thread gets about CHUNKS_PER_THREAD chunks - game lengths vary
+	//a lot, so a chunk lasts as long as its longest game and spare chunks keep all cores busy
+	public static int MAX_CHUNK_SIZE = 16;
+	public static int CHUNKS_PER_THREAD = 4;
+
+	public double[] weights;
+	public int threads = Runtime.getRuntime().availableProcessors();
+
+	//results by game
+	private int[] rowsCleared;
+	private int[] piecesPlaced;
+	private long elapsedNanos;
+
+	public BatchRunner(double[] weights)
+	{
+		this.weights = weights.clone();
+	}
+
+	//throws if any game failed - the results would be incomplete
+	public void run(int games, long seed) throws ExecutionException, InterruptedException
+	{
+		if (games <= 0)
+			throw new IllegalArgumentException("games must be positive: " + games);
+		rowsCleared = new int[games];
+		piecesPlaced = new int[games];
+
+		//one source per game, derived from the seed in game order
+		XoroshiroPieceSource root = new XoroshiroPieceSource(seed);
+		final PieceSource[] sources = new PieceSource[games];
+		for (int i = 0; i < games; i++)
+			sources[i] = root.split();
+
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		List<Future<?>> chunks = new ArrayList<>();
+		int chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, games / (threads * CHUNKS_PER_THREAD)));
+		long start = System.nanoTime();
+		for (int from = 0; from < games; from += chunkSize)
+		{
+			final int first = from;
+			final int last = Math.min(games, from + chunkSize);
+			chunks.add(exec.submit(new Runnable() {
+				public void run()
+				{
+					playChunk(sources, first, last);
+				}
+			}));
+		}
+		try
+		{
+			for (Future<?> f : chunks)
+				f.get();
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+		elapsedNanos = System.nanoTime() - start;
+	}
+
+	//plays games [first, last) in lockstep on the calling thread
+	private void playChunk(PieceSource[] sources, int first, int last)
+	{
+		PlayerSkeleton ps = new PlayerSkeleton();
+		ps.setWeights(weights);
+		BatchSimulator sim = new BatchSimulator(Arrays.copyOfRange(sources, first, last), ps);
+		sim.run();
+		for (int i = first; i < last; i++)
+		{
+			rowsCleared[i] = sim.getRowsCleared(i - first);
+			piecesPlaced[i] = sim.getPiecesPlaced(i - first);
+		}
+	}
+
+	public void printSummary(PrintStream out)
+	{
+		if (rowsCleared == null)
+			throw new IllegalStateException("no games have been run");
+		int games = rowsCleared.length;
+		long decisions = 0;
+		long pieces = 0;
+		long totalRows = 0;
+		for (int i = 0; i < games; i++)
+		{
+			//one move decision per piece, but the last piece of a game is never placed
+			decisions += piecesPlaced[i];
+			pieces += piecesPlaced[i] - 1;
+			totalRows += rowsCleared[i];
+		}
+		int[] sorted = rowsCleared.clone();
+		Arrays.sort(sorted);
+		double seconds = elapsedNanos / 1e9;
+
+		out.println("games " + games + " on " + threads + " threads in " + String.format("%.3f", seconds) + "s");
+		out.println("pieces/sec " + String.format("%.1f", pieces / seconds));
+		out.println("decisions/sec " + String.format("%.1f", decisions / seconds));
+		out.println("rows cleared mean " + String.format("%.2f", (double) totalRows / games)
+				+ " median " + percentile(sorted, 50) + " p99 " + percentile(sorted, 99)
+				+ " min " + sorted[0] + " max " + sorted[games-1]);
+	}
+
+	public void saveToFile(String fileName) throws FileNotFoundException
+	{
+		PrintWriter out = new PrintWriter(fileName);
+		out.println("game,rows_cleared,pieces_placed");
+		for (int i = 0; i < rowsCleared.length; i++)
+			out.println(i + "," + rowsCleared[i] + "," + piecesPlaced[i]);
+		out.close();
+	}
+
+	//nearest-rank percentile of a sorted array
+	private static int percentile(int[] sorted, int p)
+	{
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length < 1)
+		{
+			System.out.println("usage: java BatchRunner <games> [seed] [w0 w1 w2 w3 w4 w5]");
+			return;
+		}
+		int games = Integer.parseInt(args[0]);
+		if (games <= 0)
+		{
+			System.out.println("games must be positive");
+			return;
+		}
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		double[] weights = new PlayerSkeleton().weights;
+		for (int i = 0; i < weights.length && i + 2 < args.length; i++)
+			weights[i] = Double.parseDouble(args[i + 2]);
+
+		BatchRunner br = new BatchRunner(weights);
+		System.out.println("seed " + seed);
+		try
+		{
+			br.run(games, seed);
+		}
+		catch (ExecutionException ee)
+		{
+			//no summary - some games have no result
+			System.out.println("game failed: " + ee.getCause());
+			return;
+		}
+		catch (InterruptedException ie)
+		{
+			System.out.println("interrupted");
+			return;
+		}
+		br.printSummary(System.out);
+		try
+		{
+			br.saveToFile(RESULTS_FILE);
+		}
+		catch (FileNotFoundException fnfe)
+		{
+			System.out.println(fnfe.getMessage());
+		}
+	}
+}
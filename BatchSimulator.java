@@ -0,0 +1,131 @@
+//Plays many independent games in lockstep on one thread.
+//Games are kept in a structure-of-arrays layout - the packed row masks, column tops,
+//next pieces and counters of every game sit in a handful of flat arrays - and each step()
+//makes one placement in every live game. Finished games are compacted out by moving the
+//last live game into their slot, so the live games always occupy slots [0, live).
+class BatchSimulator {
+	public static final int COLS = State.COLS;
+	public static final int ROWS = State.ROWS;
+
+	private PlayerSkeleton player;
+
+	//number of games in the batch, and how many of them are still running
+	private int size;
+	private int live;
+
+	//per slot state - slot s owns rows[s*ROWS .. s*ROWS+ROWS) and tops[s*COLS .. s*COLS+COLS)
+	private int[] rows;
+	private int[] tops;
+	private int[] nextPiece;
+	private int[] cleared;
+	private int[] turns;
+	private PieceSource[] pieces;
+	//which game is in each slot
+	private int[] gameId;
+
+	//results by game, filled in as games finish
+	private int[] rowsCleared;
+	private int[] piecesPlaced;
+
+	//board a game is loaded into while it moves
+	private BitBoard board = new BitBoard();
+
+	//games seeded from one seed - the same seed replays the same batch
+	public BatchSimulator(int games, PlayerSkeleton player, long seed) {
+		this(sources(games, seed), player);
+	}
+
+	//one game per piece source
+	public BatchSimulator(PieceSource[] sources, PlayerSkeleton player) {
+		this.player = player;
+		size = sources.length;
+		live = size;
+		rows = new int[size*ROWS];
+		tops = new int[size*COLS];
+		nextPiece = new int[size];
+		cleared = new int[size];
+		turns = new int[size];
+		pieces = sources.clone();
+		gameId = new int[size];
+		rowsCleared = new int[size];
+		piecesPlaced = new int[size];
+		for(int s = 0; s < size; s++) {
+			gameId[s] = s;
+			nextPiece[s] = pieces[s].nextPiece();
+		}
+	}
+
+	private static PieceSource[] sources(int games, long seed) {
+		XoroshiroPieceSource root = new XoroshiroPieceSource(seed);
+		PieceSource[] sources = new PieceSource[games];
+		for(int i = 0; i < games; i++) {
+			sources[i] = root.split();
+		}
+		return sources;
+	}
+
+	//one placement in every live game
+	//returns true if any game is still running afterwards
+	public boolean step() {
+		int s = 0;
+		while(s < live) {
+			int piece = nextPiece[s];
+			board.load(rows, s*ROWS, tops, s*COLS, cleared[s]);
+			int[][] legalMoves = PieceCatalog.legalMoves[piece];
+			int[] move = legalMoves[player.pickMove(board, piece, legalMoves)];
+			turns[s]++;
+			if(board.place(piece, move[State.ORIENT], move[State.SLOT])) {
+				board.store(rows, s*ROWS, tops, s*COLS);
+				cleared[s] = board.cleared;
+				nextPiece[s] = pieces[s].nextPiece();
+				s++;
+			}
+			else {
+				//game over - record it and move the last live game into this slot
+				//that game has not moved yet this step, so the slot is looked at again
+				finish(s);
+			}
+		}
+		return live > 0;
+	}
+
+	//steps until every game has finished
+	public void run() {
+		while(step());
+	}
+
+	private void finish(int s) {
+		int id = gameId[s];
+		rowsCleared[id] = cleared[s];
+		piecesPlaced[id] = turns[s];
+		live--;
+		if(s != live) {
+			System.arraycopy(rows, live*ROWS, rows, s*ROWS, ROWS);
+			System.arraycopy(tops, live*COLS, tops, s*COLS, COLS);
+			nextPiece[s] = nextPiece[live];
+			cleared[s] = cleared[live];
+			turns[s] = turns[live];
+			pieces[s] = pieces[live];
+			gameId[s] = gameId[live];
+		}
+		pieces[live] = null;
+	}
+
+	public int getGameCount() {
+		return size;
+	}
+
+	public int getLiveGames() {
+		return live;
+	}
+
+	//rows cleared by a finished game
+	public int getRowsCleared(int game) {
+		return rowsCleared[game];
+	}
+
+	//pieces placed by a finished game, counting the one that lost
+	public int getPiecesPlaced(int game) {
+		return piecesPlaced[game];
+	}
+}
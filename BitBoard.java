@@ -0,0 +1,240 @@
+//Bitboard representation of the tetris board, shared by State and NextState.
+//Each row is stored as a COLS-bit mask in a primitive array - bit c set means column c is filled.
+//A full row is detected with a single compare against FULL_ROW.
+//getField() still serves an int[ROWS][COLS] view for older callers, but it is only
+//materialized on demand. Filled squares in the view are 1 - turn stamps are not kept.
+class BitBoard {
+	public static final int COLS = State.COLS;
+	public static final int ROWS = State.ROWS;
+
+	//mask of a row with every column filled
+	public static final int FULL_ROW = (1 << COLS) - 1;
+
+	//each row of the grid as a bit mask - bit c is column c
+	int[] rows = new int[ROWS];
+	//top row+1 of each column
+	//0 means empty
+	int[] top = new int[COLS];
+
+	int cleared = 0;
+	boolean lost = false;
+
+	//per column feature totals kept up to date by place/undo - null unless setIncremental(true)
+	FeatureTracker tracker;
+
+	//lazily materialized view of rows for getField()
+	private int[][] fieldView;
+	private boolean viewDirty = true;
+
+	public BitBoard() {
+	}
+
+	//copy constructor
+	public BitBoard(BitBoard other) {
+		copyFrom(other);
+	}
+
+	//overwrite this board with the contents of another
+	public void copyFrom(BitBoard other) {
+		System.arraycopy(other.rows, 0, rows, 0, ROWS);
+		System.arraycopy(other.top, 0, top, 0, COLS);
+		cleared = other.cleared;
+		lost = other.lost;
+		viewDirty = true;
+		if(tracker != null) {
+			if(other.tracker != null)	tracker.copyFrom(other.tracker);
+			else	tracker.recomputeAll(this);
+		}
+	}
+
+	//overwrite this board from an int[][] field where 0 means empty
+	public void load(int[][] grid, int[] oldTop) {
+		for(int r = 0; r < ROWS; r++) {
+			int mask = 0;
+			for(int c = 0; c < COLS; c++) {
+				if(grid[r][c] != 0)	mask |= 1 << c;
+			}
+			rows[r] = mask;
+		}
+		System.arraycopy(oldTop, 0, top, 0, COLS);
+		viewDirty = true;
+		if(tracker != null)	tracker.recomputeAll(this);
+	}
+
+	//turns incremental feature maintenance on or off - see FeatureTracker
+	public void setIncremental(boolean on) {
+		if(on && tracker == null) {
+			tracker = new FeatureTracker();
+			tracker.recomputeAll(this);
+		}
+		else if(!on) {
+			tracker = null;
+		}
+	}
+
+	public boolean isIncremental() {
+		return tracker != null;
+	}
+
+	//overwrite this board from packed arrays, e.g. one game of a BatchSimulator
+	public void load(int[] packedRows, int rowOffset, int[] packedTops, int topOffset, int rowsCleared) {
+		System.arraycopy(packedRows, rowOffset, rows, 0, ROWS);
+		System.arraycopy(packedTops, topOffset, top, 0, COLS);
+		cleared = rowsCleared;
+		lost = false;
+		viewDirty = true;
+		if(tracker != null)	tracker.recomputeAll(this);
+	}
+
+	//write rows and tops back to packed arrays - the reverse of load(...)
+	public void store(int[] packedRows, int rowOffset, int[] packedTops, int topOffset) {
+		System.arraycopy(rows, 0, packedRows, rowOffset, ROWS);
+		System.arraycopy(top, 0, packedTops, topOffset, COLS);
+	}
+
+	public boolean filled(int r, int c) {
+		return (rows[r] & (1 << c)) != 0;
+	}
+
+	public int[] getTop() {
+		return top;
+	}
+
+	//int[][] view of the board - rebuilt only if the board changed since the last call
+	public int[][] getField() {
+		if(fieldView == null)	fieldView = new int[ROWS][COLS];
+		if(viewDirty) {
+			for(int r = 0; r < ROWS; r++) {
+				for(int c = 0; c < COLS; c++) {
+					fieldView[r][c] = (rows[r] >>> c) & 1;
+				}
+			}
+			viewDirty = false;
+		}
+		return fieldView;
+	}
+
+	//drops the piece into the board
+	//returns false if you lose - true otherwise
+	public boolean place(int piece, int orient, int slot) {
+		return place(piece, orient, slot, null);
+	}
+
+	//drops the piece into the board, recording what undo(...) needs in the given MoveUndo (may be null)
+	//returns false if you lose - true otherwise
+	public boolean place(int piece, int orient, int slot, MoveUndo undo) {
+		return placeAt(piece, orient, slot, landingHeight(piece, orient, slot), undo);
+	}
+
+	//row the bottom of the piece lands on when dropped straight down at slot
+	public int landingHeight(int piece, int orient, int slot) {
+		int width = PieceCatalog.pWidth[piece][orient];
+		int[] bottom = PieceCatalog.pBottom[piece][orient];
+		//height if the first column makes contact
+		int height = top[slot]-bottom[0];
+		//for each column beyond the first in the piece
+		for(int c = 1; c < width; c++) {
+			height = Math.max(height,top[slot+c]-bottom[c]);
+		}
+		return height;
+	}
+
+	//place(...) with the landing row already known, e.g. computed once and shared by several
+	//placements, or a tuck found by ReachableMoves - height must be where the piece comes to rest
+	//returns false if you lose - true otherwise
+	public boolean placeAt(int piece, int orient, int slot, int height, MoveUndo undo) {
+		int width = PieceCatalog.pWidth[piece][orient];
+		int[] mask = PieceCatalog.pRowMask[piece][orient];
+
+		if(undo != null) {
+			undo.wasLost = lost;
+			undo.piece = piece;
+			undo.orient = orient;
+			undo.slot = slot;
+			undo.height = height;
+			undo.nCleared = 0;
+		}
+
+		//check if game ended
+		if(height+mask.length >= ROWS) {
+			lost = true;
+			if(undo != null)	undo.placed = false;
+			return false;
+		}
+
+		if(undo != null) {
+			undo.placed = true;
+			System.arraycopy(top, 0, undo.top, 0, COLS);
+		}
+
+		viewDirty = true;
+
+		//fill in the piece one row at a time
+		for(int h = 0; h < mask.length; h++) {
+			rows[height+h] |= mask[h] << slot;
+		}
+
+		//adjust top - a piece tucked under an overhang can end below a column's top
+		int[] pieceTop = PieceCatalog.pTop[piece][orient];
+		for(int c = 0; c < width; c++) {
+			top[slot+c]=Math.max(top[slot+c], height+pieceTop[c]);
+		}
+
+		int rowsCleared = 0;
+
+		//check for full rows - starting at the top
+		for(int r = height+mask.length-1; r >= height; r--) {
+			//if the row was full - remove it and slide above stuff down
+			if(rows[r] == FULL_ROW) {
+				if(undo != null)	undo.clearedRows[rowsCleared] = r;
+				rowsCleared++;
+				System.arraycopy(rows, r+1, rows, r, ROWS-1-r);
+				rows[ROWS-1] = 0;
+			}
+		}
+
+		if(rowsCleared > 0) {
+			if(undo != null)	undo.nCleared = rowsCleared;
+			cleared += rowsCleared;
+			//every column loses one square per cleared row - then drop to the next filled square
+			for(int c = 0; c < COLS; c++) {
+				int t = top[c]-rowsCleared;
+				while(t>=1 && (rows[t-1] & (1 << c)) == 0)	t--;
+				top[c] = t;
+			}
+		}
+
+		if(tracker != null)	tracker.update(this, slot, width, height, mask.length, rowsCleared);
+
+		return true;
+	}
+
+	//reverts the place(...) call that filled in undo
+	//moves must be undone in the reverse order they were made
+	public void undo(MoveUndo undo) {
+		lost = undo.wasLost;
+		if(!undo.placed)	return;
+
+		viewDirty = true;
+
+		//put the cleared rows back - the last one removed goes back first
+		for(int k = undo.nCleared-1; k >= 0; k--) {
+			int r = undo.clearedRows[k];
+			System.arraycopy(rows, r, rows, r+1, ROWS-1-r);
+			rows[r] = FULL_ROW;
+		}
+		cleared -= undo.nCleared;
+
+		//take the piece back out
+		int[] mask = PieceCatalog.pRowMask[undo.piece][undo.orient];
+		for(int h = 0; h < mask.length; h++) {
+			rows[undo.height+h] &= ~(mask[h] << undo.slot);
+		}
+
+		System.arraycopy(undo.top, 0, top, 0, COLS);
+
+		if(tracker != null) {
+			tracker.update(this, undo.slot, PieceCatalog.pWidth[undo.piece][undo.orient], undo.height, mask.length, undo.nCleared);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+//Branch-and-bound version of PlayerSkeleton.getHeuristic.
+//Features are computed one at a time from cheapest to most expensive. Every feature is
+//non-negative and has a known maximum, so after each one the best the candidate could
+//still reach is the partial sum plus, for each feature left, its maximum times its weight
+//if the weight is positive (a feature with a negative weight can only lower the sum).
+//Once that bound cannot beat the best value so far the candidate is cut and the remaining
+//features are never computed.
+//
+//Candidates that are not cut get exactly getHeuristic's value, so a search using this picks
+//the same moves as one using getHeuristic.
+class BoundedEvaluator {
+	public static final int COLS = BitBoard.COLS;
+	public static final int ROWS = BitBoard.ROWS;
+
+	//returned for candidates that were cut
+	public static final double CUT = Double.NEGATIVE_INFINITY;
+
+	//evaluation order, cheapest first
+	private static final int[] ORDER = {
+		Features.ROWS_CLEARED,
+		Features.MAX_HEIGHT,
+		Features.HOLES,
+		Features.COL_TRANSITIONS,
+		Features.ROW_TRANSITIONS,
+		Features.WELLS
+	};
+	private static final int N = ORDER.length;
+
+	//largest value each feature can take, by feature index
+	private static final double[] MAX_FEATURE = new double[Features.NUM_FEATURES];
+	static {
+		int triangle = 0;
+		for(int h = 1; h < ROWS; h++) {
+			triangle += h * (h + 1) / 2;
+		}
+		MAX_FEATURE[Features.ROW_TRANSITIONS] = ROWS * (COLS + 1);
+		MAX_FEATURE[Features.COL_TRANSITIONS] = ROWS * COLS;
+		MAX_FEATURE[Features.HOLES] = ROWS * COLS * 10;
+		MAX_FEATURE[Features.WELLS] = COLS * triangle;
+		MAX_FEATURE[Features.MAX_HEIGHT] = ROWS;
+		//left unbounded - it is computed first, so its bound is only used before anything is known
+		MAX_FEATURE[Features.ROWS_CLEARED] = Integer.MAX_VALUE;
+	}
+
+	private final double[] weights;
+	//bound[k] = most the features ORDER[k..] can add to the sum
+	private double[] bound = new double[N + 1];
+	private double[] features = new double[Features.NUM_FEATURES];
+
+	private long evaluated, cut, featuresComputed, featuresSkipped;
+
+	//weights is read, not copied - call prepare() after changing it
+	public BoundedEvaluator(double[] weights) {
+		this.weights = weights;
+		prepare();
+	}
+
+	//recompute the bounds from the current weights
+	public void prepare() {
+		bound[N] = 0;
+		for(int k = N-1; k >= 0; k--) {
+			int f = ORDER[k];
+			bound[k] = bound[k+1] + Math.max(0, weights[f]) * MAX_FEATURE[f];
+		}
+	}
+
+	//getHeuristic(ns), or CUT if it cannot be greater than maxSoFar
+	public double evaluate(NextState ns, double maxSoFar) {
+		evaluated++;
+		if (ns.hasLost())
+			return Integer.MIN_VALUE;
+
+		BitBoard b = ns.getBoard();
+		int maxH = 0;
+		double partial = 0;
+		for(int k = 0; k < N; k++) {
+			//allow for rounding, since the final sum is taken in a different order
+			double upper = partial + bound[k];
+			if(upper + 1e-9 * (Math.abs(partial) + Math.abs(bound[k]) + 1) <= maxSoFar) {
+				cut++;
+				featuresSkipped += N - k;
+				return CUT;
+			}
+			int f = ORDER[k];
+			switch(f) {
+				case Features.ROWS_CLEARED:	features[f] = b.cleared; break;
+				case Features.MAX_HEIGHT:	maxH = Features.maxHeight(b); features[f] = maxH; break;
+				case Features.HOLES:	features[f] = Features.holes(b, maxH); break;
+				case Features.COL_TRANSITIONS:	features[f] = Features.colTransitions(b, maxH); break;
+				case Features.ROW_TRANSITIONS:	features[f] = Features.rowTransitions(b, maxH); break;
+				case Features.WELLS:	features[f] = Features.wells(b, maxH); break;
+			}
+			featuresComputed++;
+			partial += weights[f] * features[f];
+		}
+
+		//same order of additions as getHeuristic
+		double heuristic = 0;
+		heuristic += weights[0] * features[Features.ROW_TRANSITIONS];
+		heuristic += weights[1] * features[Features.COL_TRANSITIONS];
+		heuristic += weights[2] * features[Features.HOLES];
+		heuristic += weights[3] * features[Features.WELLS];
+		heuristic += weights[4] * features[Features.MAX_HEIGHT];
+		heuristic += weights[5] * features[Features.ROWS_CLEARED];
+		return heuristic;
+	}
+
+	public long getEvaluated() {
+		return evaluated;
+	}
+
+	//candidates that were cut before all features were computed
+	public long getCut() {
+		return cut;
+	}
+
+	public long getFeaturesComputed() {
+		return featuresComputed;
+	}
+
+	public long getFeaturesSkipped() {
+		return featuresSkipped;
+	}
+
+	public void resetCounters() {
+		evaluated = cut = featuresComputed = featuresSkipped = 0;
+	}
+}
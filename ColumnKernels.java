@@ -0,0 +1,147 @@
+//Column-parallel pieces of the engine: the landing row of one orientation at every slot,
+//and the board features. The default implementation is the scalar code in BitBoard and
+//Features. An implementation on the jdk.incubator.vector API, with the 10 columns (or
+//slots) in SIMD lanes, lives in simd/VectorColumnKernels.java. It is loaded by name, so
+//the rest of the tree builds and runs without the incubator module. See readme.txt for
+//how to build and enable it.
+//
+//Every implementation gives exactly the scalar values.
+abstract class ColumnKernels {
+	public static final int COLS = BitBoard.COLS;
+
+	private static final String VECTOR_CLASS = "VectorColumnKernels";
+
+	private static final ColumnKernels SCALAR = new ColumnKernels() {
+		public void landingHeights(int[] top, int[] bottom, int[] out) {
+			for(int slot = 0; slot + bottom.length <= COLS; slot++) {
+				int height = top[slot] - bottom[0];
+				for(int c = 1; c < bottom.length; c++)
+					height = Math.max(height, top[slot + c] - bottom[c]);
+				out[slot] = height;
+			}
+		}
+
+		public void extract(BitBoard b, double[] out, int offset) {
+			Features.extract(b, out, offset);
+		}
+
+		public String getName() {
+			return "scalar";
+		}
+	};
+
+	private static ColumnKernels vector;
+	private static boolean vectorTried;
+
+	//landing row of an orientation with the given bottom profile, for slots 0..COLS-bottom.length
+	public abstract void landingHeights(int[] top, int[] bottom, int[] out);
+
+	//same as Features.extract
+	public abstract void extract(BitBoard b, double[] out, int offset);
+
+	public abstract String getName();
+
+	public static ColumnKernels scalar() {
+		return SCALAR;
+	}
+
+	//the Vector API implementation, or null if it was not built or the JVM was started
+	//without --add-modules jdk.incubator.vector
+	public static synchronized ColumnKernels vector() {
+		if(!vectorTried) {
+			vectorTried = true;
+			try {
+				vector = (ColumnKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+			}
+			catch(Exception | LinkageError e) {
+				vector = null;
+			}
+		}
+		return vector;
+	}
+
+	//the vector implementation if it is available, otherwise the scalar one
+	public static ColumnKernels best() {
+		ColumnKernels k = vector();
+		return k != null ? k : SCALAR;
+	}
+
+	//checks the vector implementation against the scalar one on boards from real games
+	//and times both
+	//usage: java --add-modules jdk.incubator.vector ColumnKernels [boards] [seed]
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		ColumnKernels vec = vector();
+		if(vec == null) {
+			System.out.println("vector kernels not available - scalar only");
+		}
+
+		//boards along games played by the default player
+		BitBoard[] boards = new BitBoard[n];
+		PlayerSkeleton p = new PlayerSkeleton();
+		State s = new State(seed);
+		for(int i = 0; i < n; i++) {
+			if(s.hasLost())
+				s = new State(seed + i);
+			boards[i] = new BitBoard();
+			boards[i].copyFrom(s.getBoard());
+			s.makeMove(p.pickMove(s, s.legalMoves()));
+		}
+
+		if(vec != null && !agree(SCALAR, vec, boards)) {
+			System.out.println("vector kernels DISAGREE with scalar");
+			return;
+		}
+		for(int round = 0; round < 5; round++) {
+			System.out.println(time(SCALAR, boards) + (vec == null ? "" : "   " + time(vec, boards)));
+		}
+	}
+
+	private static boolean agree(ColumnKernels a, ColumnKernels b, BitBoard[] boards) {
+		double[] fa = new double[Features.NUM_FEATURES];
+		double[] fb = new double[Features.NUM_FEATURES];
+		int[] la = new int[COLS];
+		int[] lb = new int[COLS];
+		for(BitBoard board : boards) {
+			a.extract(board, fa, 0);
+			b.extract(board, fb, 0);
+			if(!java.util.Arrays.equals(fa, fb))
+				return false;
+			for(int p = 0; p < State.N_PIECES; p++) {
+				for(int o = 0; o < PieceCatalog.pOrients[p]; o++) {
+					int[] bottom = PieceCatalog.pBottom[p][o];
+					a.landingHeights(board.top, bottom, la);
+					b.landingHeights(board.top, bottom, lb);
+					if(!java.util.Arrays.equals(la, 0, COLS - bottom.length + 1, lb, 0, COLS - bottom.length + 1))
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	//ns per board for extract and for the landing rows of all 19 orientations
+	private static String time(ColumnKernels k, BitBoard[] boards) {
+		double[] f = new double[Features.NUM_FEATURES];
+		int[] l = new int[COLS];
+		long sink = 0;
+		long start = System.nanoTime();
+		for(BitBoard board : boards) {
+			k.extract(board, f, 0);
+			sink += (long) f[Features.WELLS];
+		}
+		long mid = System.nanoTime();
+		for(BitBoard board : boards) {
+			for(int p = 0; p < State.N_PIECES; p++) {
+				for(int o = 0; o < PieceCatalog.pOrients[p]; o++) {
+					k.landingHeights(board.top, PieceCatalog.pBottom[p][o], l);
+					sink += l[0];
+				}
+			}
+		}
+		long end = System.nanoTime();
+		return String.format("%s extract %.1fns landing %.1fns (%d)", k.getName(),
+				(double) (mid - start) / boards.length, (double) (end - mid) / boards.length, sink & 1);
+	}
+}
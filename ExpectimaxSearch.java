@@ -0,0 +1,163 @@
+//Depth-configurable expectimax search with a per-decision time budget.
+//Depth counts placements: depth 1 scores each root move by its heuristic (pickMove),
+//depth 2 averages the best reply over the 7 possible next pieces (pickMoveLookahead),
+//and every further level adds another chance node over the 7 pieces and max node over moves.
+//
+//When the State shows previews (State.setPreviewSize), the chance nodes for the previewed
+//pieces have a single branch with the known piece; averaging over the 7 pieces only starts
+//beyond the preview horizon. Without previews the search is plain expectimax.
+//
+//The search deepens iteratively from depth 1 up to maxDepth. Depth 1 always completes,
+//so a move is always ready; a deeper iteration only replaces it if it finishes before the
+//deadline, otherwise it is abandoned part way.
+class ExpectimaxSearch {
+	public static final int N_PIECES = State.N_PIECES;
+	//inner nodes between deadline checks - each one has a few dozen leaves under it
+	private static final int CHECK_INTERVAL = 16;
+
+	private final PlayerSkeleton player;
+	//at least 1
+	public int maxDepth;
+
+	private NextState ns = new NextState();
+	private MoveUndo[] undo;
+	//pieces known to follow the root piece - known[0] is placed second
+	private int[] known = new int[0];
+	private int nKnown;
+	private double[] features = new double[Features.NUM_FEATURES];
+
+	private long deadline;
+	private boolean aborted;
+	private long nodes;
+	private int sinceCheck;
+
+	//result of the deepest completed iteration
+	private int bestMove;
+	private double bestValue;
+	private int completedDepth;
+
+	public ExpectimaxSearch(PlayerSkeleton player, int maxDepth) {
+		this.player = player;
+		this.maxDepth = maxDepth;
+		checkDepth();
+		undo = new MoveUndo[maxDepth];
+		for (int i = 0; i < maxDepth; i++)
+			undo[i] = new MoveUndo();
+	}
+
+	private void checkDepth() {
+		if (maxDepth < 1)
+			throw new IllegalArgumentException("search depth must be at least 1: " + maxDepth);
+	}
+
+	//best move found within budgetMillis, searching no deeper than maxDepth
+	//uses the State's previews, if it shows any
+	public int pickMove(State s, int[][] legalMoves, long budgetMillis) {
+		int k = s.getPreviewSize();
+		if (known.length < k)
+			known = new int[k];
+		for (int i = 0; i < k; i++)
+			known[i] = s.getPreview(i);
+		nKnown = k;
+		int move = pickMove(s.getBoard(), s.getNextPiece(), legalMoves, System.nanoTime() + budgetMillis * 1000000L);
+		nKnown = 0;
+		return move;
+	}
+
+	int pickMove(BitBoard root, int piece, int[][] legalMoves, long deadline) {
+		checkDepth();
+		if (undo.length < maxDepth) {
+			undo = new MoveUndo[maxDepth];
+			for (int i = 0; i < maxDepth; i++)
+				undo[i] = new MoveUndo();
+		}
+		this.deadline = deadline;
+		aborted = false;
+		nodes = 0;
+		sinceCheck = 0;
+		completedDepth = 0;
+		bestMove = 0;
+		bestValue = Integer.MIN_VALUE;
+
+		ns.reset(root, piece, 0);
+		for (int depth = 1; depth <= maxDepth && !aborted; depth++) {
+			int move = 0;
+			double maxSoFar = Integer.MIN_VALUE;
+			for (int i = 0; i < legalMoves.length && !aborted; i++) {
+				ns.applyMove(piece, legalMoves[i][State.ORIENT], legalMoves[i][State.SLOT], undo[0]);
+				double currValue = value(1, depth);
+				ns.undoMove(undo[0]);
+				if (currValue > maxSoFar) {
+					maxSoFar = currValue;
+					move = i;
+				}
+			}
+			if (!aborted) {
+				bestMove = move;
+				bestValue = maxSoFar;
+				completedDepth = depth;
+			}
+		}
+		return bestMove;
+	}
+
+	//value of ns after placed moves, for a search of the given depth
+	private double value(int placed, int depth) {
+		nodes++;
+		if (ns.hasLost())
+			return Integer.MIN_VALUE;
+		if (placed == depth)
+			return player.getHeuristic(ns, features);
+		//never abort depth 1, so there is always a move
+		if (depth > 1 && ++sinceCheck >= CHECK_INTERVAL) {
+			sinceCheck = 0;
+			if (System.nanoTime() >= deadline)
+				aborted = true;
+		}
+		if (aborted)
+			return 0;
+
+		//the next piece is known - no chance node
+		if (placed - 1 < nKnown)
+			return maxValue(known[placed - 1], placed, depth);
+
+		//chance node - average the best move over every next piece
+		double sum = 0;
+		for (int j = 0; j < N_PIECES; j++) {
+			sum += maxValue(j, placed, depth);
+		}
+		return sum / N_PIECES;
+	}
+
+	//max node - best value over the placements of the given piece
+	private double maxValue(int piece, int placed, int depth) {
+		int[][] legalMoves = PieceCatalog.legalMoves[piece];
+		double maxSoFar = Integer.MIN_VALUE;
+		for (int k = 0; k < legalMoves.length && !aborted; k++) {
+			ns.applyMove(piece, legalMoves[k][State.ORIENT], legalMoves[k][State.SLOT], undo[placed]);
+			double currValue = value(placed + 1, depth);
+			ns.undoMove(undo[placed]);
+			if (currValue > maxSoFar)
+				maxSoFar = currValue;
+		}
+		return maxSoFar;
+	}
+
+	//move chosen by the deepest completed iteration so far
+	public int getBestSoFar() {
+		return bestMove;
+	}
+
+	public double getBestValue() {
+		return bestValue;
+	}
+
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	//nodes visited by the last pickMove, including abandoned iterations
+	public long getNodes() {
+		return nodes;
+	}
+}
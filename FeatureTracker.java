@@ -0,0 +1,175 @@
+//Incremental version of Features for a BitBoard.
+//Keeps the contribution of every column (holes, column transitions, wells, blocks on holes)
+//and of every row (row transitions) plus their running totals. A placement only touches
+//the columns under the piece and their two neighbours, and the rows the piece covers, so
+//place/undo refresh just those and read() is O(1). A line clear shifts every column, so
+//clears (and undoing them) fall back to recomputing everything.
+//Enabled per board with BitBoard.setIncremental(true).
+class FeatureTracker {
+	public static final int COLS = BitBoard.COLS;
+	public static final int ROWS = BitBoard.ROWS;
+
+	private static final int NOT_LAST_COL = (1 << (COLS-1)) - 1;
+	private static final int LAST_COL = 1 << (COLS-1);
+
+	//per column contributions
+	private int[] colHoles = new int[COLS];
+	private int[] colTransitions = new int[COLS];
+	private int[] colWells = new int[COLS];
+	private int[] colBlocksOnHoles = new int[COLS];
+	//per row contributions
+	private int[] rowTransitions = new int[ROWS];
+
+	//running totals
+	private int holes, colTrans, wells, blocksOnHoles, rowTrans;
+	private int maxHeight;
+
+	//recompute every column and row of the board
+	public void recomputeAll(BitBoard b) {
+		holes = colTrans = wells = blocksOnHoles = rowTrans = 0;
+		for(int c = 0; c < COLS; c++) {
+			colHoles[c] = holes(b, c);
+			colTransitions[c] = colTransitions(b, c);
+			colWells[c] = wells(b, c);
+			colBlocksOnHoles[c] = blocksOnHoles(b, c);
+			holes += colHoles[c];
+			colTrans += colTransitions[c];
+			wells += colWells[c];
+			blocksOnHoles += colBlocksOnHoles[c];
+		}
+		for(int r = 0; r < ROWS; r++) {
+			rowTransitions[r] = rowTransitions(b.rows, r);
+			rowTrans += rowTransitions[r];
+		}
+		updateMaxHeight(b);
+	}
+
+	//copy the totals of another tracker that follows an identical board
+	public void copyFrom(FeatureTracker other) {
+		System.arraycopy(other.colHoles, 0, colHoles, 0, COLS);
+		System.arraycopy(other.colTransitions, 0, colTransitions, 0, COLS);
+		System.arraycopy(other.colWells, 0, colWells, 0, COLS);
+		System.arraycopy(other.colBlocksOnHoles, 0, colBlocksOnHoles, 0, COLS);
+		System.arraycopy(other.rowTransitions, 0, rowTransitions, 0, ROWS);
+		holes = other.holes;
+		colTrans = other.colTrans;
+		wells = other.wells;
+		blocksOnHoles = other.blocksOnHoles;
+		rowTrans = other.rowTrans;
+		maxHeight = other.maxHeight;
+	}
+
+	//called by BitBoard after a piece of the given width and height was added or removed
+	//at (slot, height) - rowsCleared is the number of rows the move cleared
+	public void update(BitBoard b, int slot, int width, int height, int pieceHeight, int rowsCleared) {
+		if(rowsCleared > 0) {
+			recomputeAll(b);
+			return;
+		}
+
+		//the piece columns, and their neighbours for wells
+		int first = Math.max(0, slot-1);
+		int last = Math.min(COLS-1, slot+width);
+		for(int c = first; c <= last; c++) {
+			holes -= colHoles[c];
+			colTrans -= colTransitions[c];
+			wells -= colWells[c];
+			blocksOnHoles -= colBlocksOnHoles[c];
+			colHoles[c] = holes(b, c);
+			colTransitions[c] = colTransitions(b, c);
+			colWells[c] = wells(b, c);
+			colBlocksOnHoles[c] = blocksOnHoles(b, c);
+			holes += colHoles[c];
+			colTrans += colTransitions[c];
+			wells += colWells[c];
+			blocksOnHoles += colBlocksOnHoles[c];
+		}
+
+		//the piece rows, and the row above whose first cell is compared with the last piece row
+		int lastRow = Math.min(ROWS-1, height+pieceHeight);
+		for(int r = height; r <= lastRow; r++) {
+			rowTrans -= rowTransitions[r];
+			rowTransitions[r] = rowTransitions(b.rows, r);
+			rowTrans += rowTransitions[r];
+		}
+
+		updateMaxHeight(b);
+	}
+
+	//same layout and values as Features.extract, written from out[offset]
+	public void read(BitBoard b, double[] out, int offset) {
+		out[offset+Features.ROW_TRANSITIONS] = rowTrans;
+		out[offset+Features.COL_TRANSITIONS] = colTrans;
+		out[offset+Features.HOLES] = (double) holes * 10;
+		out[offset+Features.WELLS] = wells;
+		out[offset+Features.MAX_HEIGHT] = maxHeight;
+		out[offset+Features.ROWS_CLEARED] = b.cleared;
+		out[offset+Features.BLOCKS_ON_HOLES] = blocksOnHoles;
+	}
+
+	private void updateMaxHeight(BitBoard b) {
+		int maxH = 0;
+		for(int c = 0; c < COLS; c++) {
+			if(b.top[c] > maxH)	maxH = b.top[c];
+		}
+		maxHeight = maxH;
+	}
+
+	//empty cells below the top of column c
+	private static int holes(BitBoard b, int c) {
+		int n = 0;
+		for(int r = b.top[c]-1; r >= 0; r--) {
+			if((b.rows[r] & (1 << c)) == 0)	n++;
+		}
+		return n;
+	}
+
+	//filled/empty changes going up column c, counting an empty floor cell under a non-empty column
+	private static int colTransitions(BitBoard b, int c) {
+		int t = b.top[c];
+		if(t == 0)	return 0;
+		int n = 0;
+		for(int r = t-2; r >= 0; r--) {
+			if(((b.rows[r] ^ b.rows[r+1]) & (1 << c)) != 0)	n++;
+		}
+		if((b.rows[0] & (1 << c)) == 0)	n++;
+		return n;
+	}
+
+	//wellFeature for column c - empty cells above its top with both neighbours filled or a wall
+	private static int wells(BitBoard b, int c) {
+		//neighbours have no filled cells from their top up, so only rows below both can count
+		int limit = Math.min(c == 0 ? ROWS : b.top[c-1], c == COLS-1 ? ROWS : b.top[c+1]);
+		int sides = (c == 0 ? 0 : 1 << (c-1)) | (c == COLS-1 ? 0 : 1 << (c+1));
+		int n = 0;
+		for(int r = b.top[c]; r < limit; r++) {
+			if((b.rows[r] & sides) == sides) {
+				int wellHeight = r - b.top[c] + 1;
+				n += wellHeight * (wellHeight + 1) / 2;
+			}
+		}
+		return n;
+	}
+
+	//filled cells in column c above its lowest empty cell
+	private static int blocksOnHoles(BitBoard b, int c) {
+		int t = b.top[c];
+		int r = 0;
+		while(r < t && (b.rows[r] & (1 << c)) != 0)	r++;
+		int n = 0;
+		for(r++; r < t; r++) {
+			if((b.rows[r] & (1 << c)) != 0)	n++;
+		}
+		return n;
+	}
+
+	//row transitions contributed by row r - see Features.extract
+	private static int rowTransitions(int[] rows, int r) {
+		int m = rows[r];
+		int n = Integer.bitCount((m ^ (m >>> 1)) & NOT_LAST_COL);
+		int prevLast = r == 0 ? 1 : (rows[r-1] >>> (COLS-1)) & 1;
+		if((m & 1) != prevLast)	n++;
+		if((m & LAST_COL) == 0)	n++;
+		return n;
+	}
+}
@@ -0,0 +1,202 @@
+//Fused feature extractor for the heuristic.
+//Computes the same values as NextState's getRowTransition, getColTransition, getHoles,
+//wellFeature, getMaxColumnHeight and getBlocksOnHoles, but in one pass over the row masks
+//below the highest column instead of one walk over the whole grid per feature.
+final class Features {
+	public static final int COLS = BitBoard.COLS;
+	public static final int ROWS = BitBoard.ROWS;
+
+	//indices into the feature vector - the first six line up with PlayerSkeleton.weights
+	public static final int ROW_TRANSITIONS = 0;
+	public static final int COL_TRANSITIONS = 1;
+	public static final int HOLES = 2;
+	public static final int WELLS = 3;
+	public static final int MAX_HEIGHT = 4;
+	public static final int ROWS_CLEARED = 5;
+	public static final int BLOCKS_ON_HOLES = 6;
+	public static final int NUM_FEATURES = 7;
+
+	//every column but the last - used to pair each cell with its right neighbour
+	private static final int NOT_LAST_COL = (1 << (COLS-1)) - 1;
+	private static final int LAST_COL = 1 << (COLS-1);
+
+	//fills out[0..NUM_FEATURES) with the features of the board
+	public static void extract(BitBoard b, double[] out) {
+		extract(b, out, 0);
+	}
+
+	//fills out[offset..offset+NUM_FEATURES) with the features of the board
+	//boards in incremental mode already have the totals, so those are just copied out
+	public static void extract(BitBoard b, double[] out, int offset) {
+		if(b.tracker != null) {
+			b.tracker.read(b, out, offset);
+			return;
+		}
+
+		int[] rows = b.rows;
+		int[] top = b.top;
+
+		int maxH = 0;
+		for(int c = 0; c < COLS; c++) {
+			if(top[c] > maxH)	maxH = top[c];
+		}
+
+		int rowTransitions = 0;
+		int colTransitions = 0;
+		int holes = 0;
+		int wellSum = 0;
+		int filledCells = 0;
+
+		//row above the current one - everything from maxH up is empty
+		int above = 0;
+		//columns with a filled cell at or above the current row, i.e. top > row
+		int covered = 0;
+
+		//one pass from the highest column down to the floor
+		for(int i = maxH-1; i >= 0; i--) {
+			int m = rows[i];
+			covered |= m;
+			filledCells += Integer.bitCount(m);
+
+			//empty cells under the top of their column
+			holes += Integer.bitCount(~m & covered);
+
+			//filled/empty changes between this row and the one above
+			colTransitions += Integer.bitCount(m ^ above);
+
+			//changes between neighbouring cells in the row, the first cell against the
+			//last cell of the row below (or a filled wall for the floor row),
+			//and an empty last cell against the right wall
+			rowTransitions += Integer.bitCount((m ^ (m >>> 1)) & NOT_LAST_COL);
+			int prevLast = i == 0 ? 1 : (rows[i-1] >>> (COLS-1)) & 1;
+			if((m & 1) != prevLast)	rowTransitions++;
+			if((m & LAST_COL) == 0)	rowTransitions++;
+
+			//empty cells above their column's top with both neighbours filled (or a wall)
+			int open = ~covered & BitBoard.FULL_ROW;
+			int wells = open & ((m << 1) | 1) & ((m >>> 1) | LAST_COL);
+			while(wells != 0) {
+				int j = Integer.numberOfTrailingZeros(wells);
+				wells &= wells - 1;
+				int wellHeight = i - top[j] + 1;
+				wellSum += wellHeight * (wellHeight + 1) / 2;
+			}
+
+			above = m;
+		}
+
+		//rows from maxH up are empty: one transition each for the empty last cell,
+		//plus one where the first empty row meets a filled last cell (or the floor)
+		rowTransitions += ROWS - maxH;
+		if(maxH == 0 || (rows[maxH-1] & LAST_COL) != 0)	rowTransitions++;
+
+		//the pass above counted the transition at the top of every column once too often,
+		//and getColTransition also counts an empty floor cell under a non-empty column
+		colTransitions -= Integer.bitCount(covered);
+		colTransitions += Integer.bitCount(~rows[0] & covered);
+
+		//blocks on holes: everything in a column above its lowest empty cell,
+		//which is every filled cell except the solid run up from the floor
+		int solid = 0;
+		int run = BitBoard.FULL_ROW;
+		for(int i = 0; run != 0 && i < ROWS; i++) {
+			run &= rows[i];
+			solid += Integer.bitCount(run);
+		}
+
+		out[offset+ROW_TRANSITIONS] = rowTransitions;
+		out[offset+COL_TRANSITIONS] = colTransitions;
+		out[offset+HOLES] = (double) holes * 10;
+		out[offset+WELLS] = wellSum;
+		out[offset+MAX_HEIGHT] = maxH;
+		out[offset+ROWS_CLEARED] = b.cleared;
+		out[offset+BLOCKS_ON_HOLES] = filledCells - solid;
+	}
+
+	//single features, for evaluators that stop early - each gives the same value as extract
+
+	public static int maxHeight(BitBoard b) {
+		int maxH = 0;
+		for(int c = 0; c < COLS; c++) {
+			if(b.top[c] > maxH)	maxH = b.top[c];
+		}
+		return maxH;
+	}
+
+	//holes as extract reports them, i.e. times 10
+	public static double holes(BitBoard b, int maxH) {
+		//every cell under a column top is either filled or a hole
+		int underTops = 0;
+		for(int c = 0; c < COLS; c++) {
+			underTops += b.top[c];
+		}
+		int filledCells = 0;
+		for(int i = 0; i < maxH; i++) {
+			filledCells += Integer.bitCount(b.rows[i]);
+		}
+		return (double) (underTops - filledCells) * 10;
+	}
+
+	public static int colTransitions(BitBoard b, int maxH) {
+		int[] rows = b.rows;
+		int n = 0;
+		int covered = 0;
+		for(int i = 0; i < maxH; i++) {
+			covered |= rows[i];
+			n += Integer.bitCount(rows[i] ^ (i+1 < ROWS ? rows[i+1] : 0));
+		}
+		return n - Integer.bitCount(covered) + Integer.bitCount(~rows[0] & covered);
+	}
+
+	public static int rowTransitions(BitBoard b, int maxH) {
+		int[] rows = b.rows;
+		int n = ROWS - maxH;
+		int prevLast = 1;
+		for(int i = 0; i < maxH; i++) {
+			int m = rows[i];
+			n += Integer.bitCount((m ^ (m >>> 1)) & NOT_LAST_COL);
+			if((m & 1) != prevLast)	n++;
+			if((m & LAST_COL) == 0)	n++;
+			prevLast = (m >>> (COLS-1)) & 1;
+		}
+		if(prevLast != 0)	n++;
+		return n;
+	}
+
+	public static int blocksOnHoles(BitBoard b, int maxH) {
+		int[] rows = b.rows;
+		int filledCells = 0;
+		for(int i = 0; i < maxH; i++) {
+			filledCells += Integer.bitCount(rows[i]);
+		}
+		int solid = 0;
+		int run = BitBoard.FULL_ROW;
+		for(int i = 0; run != 0 && i < maxH; i++) {
+			run &= rows[i];
+			solid += Integer.bitCount(run);
+		}
+		return filledCells - solid;
+	}
+
+	public static int wells(BitBoard b, int maxH) {
+		int[] rows = b.rows;
+		int[] top = b.top;
+		int wellSum = 0;
+		int covered = 0;
+		for(int i = maxH-1; i >= 0; i--) {
+			int m = rows[i];
+			covered |= m;
+			int wells = ~covered & BitBoard.FULL_ROW & ((m << 1) | 1) & ((m >>> 1) | LAST_COL);
+			while(wells != 0) {
+				int j = Integer.numberOfTrailingZeros(wells);
+				wells &= wells - 1;
+				int wellHeight = i - top[j] + 1;
+				wellSum += wellHeight * (wellHeight + 1) / 2;
+			}
+		}
+		return wellSum;
+	}
+
+	private Features() {
+	}
+}
@@ -0,0 +1,170 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Island model version of LearningAlgorithm.
+//The population is split into ISLANDS subpopulations of ISLAND_SIZE. Each island runs its
+//own generational loop - evaluate, sort, breed by tournament, replace the worst - on its own
+//thread with its own random number generator, so islands never wait for or lock each other.
+//Every MIGRATION_INTERVAL generations an island sends copies of its best MIGRANTS learners to
+//the next island in a ring through a lock-free queue. Arrivals replace the worst learners that
+//survive the receiving island's next breeding, and are scored there on its own games.
+//
+//Selection, crossover and mutation are LearningAlgorithm's, drawing from the island's generator.
+//
+//Within an island, every learner of a generation plays the same GAMES_PER_LEARNER games,
+//as in LearningAlgorithm with COMMON_GAMES.
+//
+//usage: java IslandModel [islands] [seed]
+public class IslandModel
+{
+	public static int ISLANDS = Runtime.getRuntime().availableProcessors();
+	public static int ISLAND_SIZE = 50;
+	public static int GENERATIONS = LearningAlgorithm.NUM_RUNS;
+	//children bred per generation on each island - the rest of the island survives
+	public static int CHILDREN = 40;
+	public static int MIGRATION_INTERVAL = 5;
+	public static int MIGRANTS = 2;
+	public static int GAMES_PER_LEARNER = LearningAlgorithm.GAMES_PER_LEARNER;
+	public static final String RESULTS_FILE = "islands.txt";
+
+	private final Island[] islands;
+
+	public IslandModel(int n, long seed)
+	{
+		XoroshiroPieceSource seeds = new XoroshiroPieceSource(seed);
+		islands = new Island[n];
+		for (int i = 0; i < n; i++)
+			islands[i] = new Island(i, seeds.nextLong());
+		//ring - each island sends to the next one's inbox
+		for (int i = 0; i < n; i++)
+			islands[i].next = islands[(i + 1) % n];
+	}
+
+	//runs every island on its own thread and waits for all of them to finish
+	public void run() throws InterruptedException
+	{
+		Thread[] threads = new Thread[islands.length];
+		for (int i = 0; i < islands.length; i++)
+		{
+			threads[i] = new Thread(islands[i], "island-" + i);
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+	}
+
+	//the fittest learner of each island, in island order - fitness is only comparable within an island
+	public ArrayList<Learner> getLearners()
+	{
+		ArrayList<Learner> best = new ArrayList<Learner>();
+		for (Island island : islands)
+			best.add(island.learners.get(0));
+		return best;
+	}
+
+	public void saveToFile(String fileName) throws FileNotFoundException
+	{
+		PrintWriter out = new PrintWriter(fileName);
+		for (Island island : islands)
+		{
+			out.println("island " + island.index);
+			for (Learner l : island.learners)
+				out.println(l.toString());
+		}
+		out.close();
+	}
+
+	private static class Island implements Runnable
+	{
+		final int index;
+		final Random rng;
+		final ArrayList<Learner> learners = new ArrayList<Learner>();
+		//learners sent here by the previous island - filled by its thread, drained by this one
+		final ConcurrentLinkedQueue<Learner> inbox = new ConcurrentLinkedQueue<Learner>();
+		Island next;
+
+		Island(int index, long seed)
+		{
+			this.index = index;
+			rng = new Random(seed);
+		}
+
+		public void run()
+		{
+			for (int i = 0; i < ISLAND_SIZE; i++)
+				learners.add(new Learner(rng));
+			for (int gen = 0; gen < GENERATIONS; gen++)
+			{
+				PieceSequences games = new PieceSequences(rng.nextLong(), GAMES_PER_LEARNER, LearningAlgorithm.SEQUENCE_PREFIX);
+				for (Learner l : learners)
+				{
+					//scores from earlier games are not comparable with this generation's
+					l.games = games;
+					l.fitness = -1;
+					l.call();
+				}
+				Collections.sort(learners);
+				System.out.println("island " + index + " " + gen + " " + learners.get(0).fitness);
+				if (gen % MIGRATION_INTERVAL == MIGRATION_INTERVAL - 1 && next != this)
+				{
+					for (int k = 0; k < MIGRANTS && k < learners.size(); k++)
+						next.inbox.add(new Learner(learners.get(k).weights));
+				}
+				receiveMigrants();
+				breed();
+			}
+			Collections.sort(learners);
+		}
+
+		//arrivals replace the worst of the learners breed() keeps, but never the island's best -
+		//learners is sorted fittest first. Arrivals with no slot left wait for the next generation
+		private void receiveMigrants()
+		{
+			Learner m;
+			int slot = learners.size() - Math.min(CHILDREN, learners.size()) - 1;
+			while (slot > 0 && (m = inbox.poll()) != null)
+				learners.set(slot--, m);
+		}
+
+		//replace the worst CHILDREN learners, mostly by tournament mating, some by immigrants
+		private void breed()
+		{
+			int children = Math.min(CHILDREN, learners.size());
+			int mated = (int) (children * LearningAlgorithm.REPRODUCTION_RATE);
+			Learner[] newGeneration = new Learner[children];
+			for (int k = 0; k < children; k++)
+			{
+				if (k < mated)
+					newGeneration[k] = LearningAlgorithm.tournamentMating(learners, rng);
+				else
+					newGeneration[k] = new Learner(rng);
+			}
+			int i = learners.size() - children;
+			for (Learner child : newGeneration)
+				learners.set(i++, child);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : ISLANDS;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		IslandModel model = new IslandModel(n, seed);
+		try
+		{
+			model.run();
+			for (Learner best : model.getLearners())
+				System.out.println("best " + best);
+			model.saveToFile(RESULTS_FILE);
+		}
+		catch (InterruptedException ie)
+		{
+			System.out.println("interrupted");
+		}
+		catch (FileNotFoundException fnfe)
+		{
+			System.out.println(fnfe.getMessage());
+		}
+	}
+}
@@ -1,5 +1,6 @@
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
 
 class Learner implements Comparable<Learner>, Callable<Integer>
 {
@@ -8,8 +9,46 @@ class Learner implements Comparable<Learner>, Callable<Integer>
 	public static double MAX_WEIGHT = 2;
 	public static double MAX_REWARD_WEIGHT = 20;
 	public static int NUM_TETRIS = 2;
+	private static final AtomicLong nextId = new AtomicLong();
+	//fitness order with ties broken by age, for populations that hold each learner once
+	public static final Comparator<Learner> RANK = new Comparator<Learner>() {
+		public int compare(Learner a, Learner b)
+		{
+			int c = a.compareTo(b);
+			return c != 0 ? c : Long.compare(a.id, b.id);
+		}
+	};
+	//racing order: learners that played more games, i.e. survived more rounds, come first,
+	//and fitness - a mean over the games played - is only compared within a round
+	public static final Comparator<Learner> RACE = new Comparator<Learner>() {
+		public int compare(Learner a, Learner b)
+		{
+			int c = Integer.compare(b.getGamesPlayed(), a.getGamesPlayed());
+			return c != 0 ? c : a.compareTo(b);
+		}
+	};
+	//steady state order: newest game set first, then RANK - fitness on different games is never compared
+	public static final Comparator<Learner> STEADY = new Comparator<Learner>() {
+		public int compare(Learner a, Learner b)
+		{
+			int c = Integer.compare(b.epoch, a.epoch);
+			return c != 0 ? c : RANK.compare(a, b);
+		}
+	};
+	//per game limits on pieces placed and time taken - 0 for none
+	public static long MAX_PIECES = 0;
+	public static long MAX_GAME_MILLIS = 0;
 	public double[] weights;
 	public int fitness = -1;
+	//unique, in order of creation
+	public final long id = nextId.getAndIncrement();
+	//games to be scored on - null plays NUM_TETRIS games with fresh random pieces
+	public PieceSequences games;
+	//which game set games is in a steady state run - only fitness of one epoch is comparable
+	public int epoch;
+	//running totals of the games played with playGame, for racing
+	private long totalRows;
+	private int gamesPlayed;
 	
 	public Learner (double[] inWeights, int fitness)
 	{
@@ -26,6 +65,15 @@ class Learner implements Comparable<Learner>, Callable<Integer>
 			weights[i] = inWeights[i];
 	}
 	
+	//random weights in the same ranges as Learner(), from rng
+	public Learner (Random rng)
+	{
+		weights = new double[NUM_WEIGHTS];
+		for (int i = 0; i < NUM_WEIGHTS-1; i++)
+			weights[i] = rng.nextDouble()*(MAX_WEIGHT - MIN_WEIGHT) + MIN_WEIGHT;
+		weights[NUM_WEIGHTS-1] = rng.nextDouble()*MAX_REWARD_WEIGHT;
+	}
+	
 	public Learner ()
 	{
 		weights = new double[NUM_WEIGHTS];
@@ -38,20 +86,52 @@ class Learner implements Comparable<Learner>, Callable<Integer>
 		weights[NUM_WEIGHTS-1] = Math.random()*MAX_REWARD_WEIGHT;
 	}
 	
+	//scores all getGameCount() games with playGame, so fitness is the same mean racing keeps
 	public Integer call()
 	{
 		if (fitness < 0)
 		{
-			fitness = 0;
-			for (int i = 0; i < NUM_TETRIS; i++)
-			{
-				PlayerSkeleton ps = new PlayerSkeleton();
-				ps.setWeights(weights);
-				fitness += ps.run();
-			}
-			fitness = fitness/NUM_TETRIS;
+			resetGames();
+			for (int g = 0; g < getGameCount(); g++)
+				playGame(g);
 		}
-			return  fitness;
+		return fitness;
+	}
+	
+	//games scored by call() - games.getGames() shared ones, or NUM_TETRIS random ones
+	public int getGameCount()
+	{
+		return games != null ? games.getGames() : NUM_TETRIS;
+	}
+	
+	//plays game g of games (a random game if there are no shared games) and updates
+	//fitness to the mean over the games played so far
+	//several games of one learner may be played at once
+	public void playGame(int g)
+	{
+		PlayerSkeleton ps = new PlayerSkeleton();
+		ps.setWeights(weights);
+		PieceSource pieces = games != null ? games.source(g) : new XoroshiroPieceSource();
+		int rows = ps.run(pieces, MAX_PIECES, MAX_GAME_MILLIS);
+		synchronized (this)
+		{
+			totalRows += rows;
+			gamesPlayed++;
+			fitness = (int)(totalRows / gamesPlayed);
+		}
+	}
+	
+	//forget the games played with playGame
+	public synchronized void resetGames()
+	{
+		totalRows = 0;
+		gamesPlayed = 0;
+		fitness = -1;
+	}
+	
+	public synchronized int getGamesPlayed()
+	{
+		return gamesPlayed;
 	}
 	
 	//compareTo is slightly different from usual
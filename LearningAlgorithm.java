@@ -1,8 +1,13 @@
 import java.util.*;
 import java.io.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class LearningAlgorithm
 {
@@ -14,17 +19,110 @@ public class LearningAlgorithm
 	public static double MUTATION_AMOUNT = 0.1; //fraction of original range to mutate by
 	public static int NUM_GEN = 80; //number of new pop introduced in each generation
 	public static double REPRODUCTION_RATE = 1.0;
-	public static int THREAD_NUM = 100; //maximum number of concurrent threads to run.
+	public static int THREAD_NUM = Runtime.getRuntime().availableProcessors(); //worker threads of the scheduler
 	public static final boolean newFile = true;
+	//every learner of a generation plays the same GAMES_PER_LEARNER games, new ones each generation
+	//false goes back to NUM_TETRIS independent random games per learner
+	public static boolean COMMON_GAMES = true;
+	public static int GAMES_PER_LEARNER = 2;
+	//pieces of each shared game kept packed in memory - longer games generate the rest
+	public static int SEQUENCE_PREFIX = 1 << 16;
+	public static long SEED = System.nanoTime();
+	//racing instead of a fixed number of games: every learner plays RACE_FIRST_GAMES shared games,
+	//then the better half plays twice as many more, and so on until RACE_GAMES games have been
+	//played or RACE_MIN_ALIVE learners are left - dropped learners keep their mean so far, and
+	//rank below every learner that outlasted them (see Learner.RACE)
+	public static boolean RACING = false;
+	public static int RACE_GAMES = 16;
+	public static int RACE_FIRST_GAMES = 1;
+	public static int RACE_MIN_ALIVE = 12;
+	//steady state instead of generations: whenever a learner's evaluation finishes it joins the
+	//ranked population (dropping the worst beyond POP_SIZE) and one child is bred and submitted,
+	//until STEADY_CHILDREN children have been bred - no core waits for the rest of a generation.
+	//Every STEADY_REDRAW children new shared games are drawn, so the population cannot overfit
+	//one set of games. Nothing waits for that either: learners scored on older games rank below
+	//every learner scored on the new ones, and until half the population has been scored on the
+	//new games, finished evaluations submit the best of the older learners again instead of a
+	//child. The rest are pushed out by children. The population is saved every STEADY_SAVE children
+	public static boolean STEADY_STATE = false;
+	public static int STEADY_CHILDREN = NUM_RUNS * NUM_GEN;
+	public static int STEADY_REDRAW = 4 * POP_SIZE;
+	public static int STEADY_SAVE = 2 * NUM_GEN;
 	public ArrayList<Learner> learners;
+	//seeds of the shared games, one per generation
+	private XoroshiroPieceSource gameSeeds;
+	//breeding and new learners - one generator per thread, split from SEED
+	private XoroshiroPieceSource breedSeeds;
+	private final ThreadLocal<Random> rng = new ThreadLocal<Random>() {
+		protected Random initialValue()
+		{
+			synchronized (breedSeeds)
+			{
+				return new Random(breedSeeds.nextLong());
+			}
+		}
+	};
+	//one long-lived work-stealing pool for every generation, with a task per game, so the games
+	//of one learner spread over the cores and idle workers take queued games from busy ones
+	private ForkJoinPool scheduler;
+
+	//steady state - newest games first, then best first (Learner.STEADY), safe to read while
+	//other threads add and remove
+	private ConcurrentSkipListSet<Learner> ranked;
+	//the games new evaluations are scored on
+	private volatile GameSet steadyGames;
+	private AtomicInteger childrenLeft;
+	private AtomicInteger childrenBred;
+	private AtomicInteger evaluations;
+	//evaluations submitted but not finished, and a latch released when that reaches 0
+	private AtomicInteger outstanding;
+	private CountDownLatch steadyDone;
+	//first failure - nothing new is submitted after it
+	private AtomicReference<Throwable> steadyFailure;
+	private int steadyRuns;
+
+	//shared games and their number in the steady state run - see Learner.epoch
+	private static class GameSet
+	{
+		final int epoch;
+		final PieceSequences games;
+
+		GameSet(int epoch, PieceSequences games)
+		{
+			this.epoch = epoch;
+			this.games = games;
+		}
+	}
 
 
 	public LearningAlgorithm ()
 	{
 		learners = new ArrayList<Learner>();
+		gameSeeds = new XoroshiroPieceSource(SEED);
+		breedSeeds = gameSeeds.split();
+		scheduler = new ForkJoinPool(THREAD_NUM);
+	}
+
+	//throws if any game failed - learners would be ranked on missing or partial scores
+	public void run () throws IOException, ExecutionException, InterruptedException
+	{
+		try
+		{
+			learn();
+		}
+		finally
+		{
+			shutdown();
+		}
+	}
+
+	//stops the scheduler's threads once the queued games are done - the algorithm cannot run again
+	public void shutdown()
+	{
+		scheduler.shutdown();
 	}
 
-	public void run () throws IOException
+	private void learn () throws IOException, ExecutionException, InterruptedException
 	{
 		int totalRuns = 0;
 		if (!newFile)
@@ -45,7 +143,12 @@ public class LearningAlgorithm
 		{
 			//start over with new random population
 			for (int i = 0; i < POP_SIZE; i++)
-				learners.add(new Learner());
+				learners.add(new Learner(rng.get()));
+		}
+		if (STEADY_STATE)
+		{
+			steadyStateRun(totalRuns);
+			return;
 		}
 		for (int run = 0; run < NUM_RUNS; run++)
 		{
@@ -63,10 +166,22 @@ public class LearningAlgorithm
 				REPRODUCTION_RATE = 0.5;
 				NUM_GEN = 70;
 			}
-			executorRun();
+			if (RACING)
+			{
+				racingRun();
+			}
+			else
+			{
+				if (COMMON_GAMES)
+					shareGames();
+				executorRun();
+			}
 			//multiThreadRun();
 			//singleThreadRun();
-			Collections.sort(learners);
+			if (RACING)
+				Collections.sort(learners, Learner.RACE);
+			else
+				Collections.sort(learners);
 			System.out.println(run + " " + learners.get(0).fitness);
 			Learner[] newGeneration = new Learner[NUM_GEN];
 			//generate children through mating
@@ -77,7 +192,7 @@ public class LearningAlgorithm
 			//generate immigrants
 			for (int k = (int)(NUM_GEN * REPRODUCTION_RATE); k < NUM_GEN; k++)
 			{
-				newGeneration[k] = new Learner();
+				newGeneration[k] = new Learner(rng.get());
 			}
 			//kill off last NUM_GEN of the old generation, replace with the new generation
 			int i = POP_SIZE-NUM_GEN;
@@ -92,20 +207,248 @@ public class LearningAlgorithm
 		}
 	}
 
+	//gives every learner this generation's games, and scores them all again on those -
+	//fitness from an earlier generation's games is not comparable
+	public void shareGames()
+	{
+		PieceSequences games = new PieceSequences(gameSeeds.nextLong(), GAMES_PER_LEARNER, SEQUENCE_PREFIX);
+		for (int i = 0; i < learners.size(); i++)
+		{
+			learners.get(i).games = games;
+			learners.get(i).fitness = -1;
+		}
+	}
+
+	//successive halving - see RACING
+	public void racingRun() throws ExecutionException, InterruptedException
+	{
+		PieceSequences games = new PieceSequences(gameSeeds.nextLong(), RACE_GAMES, SEQUENCE_PREFIX);
+		ArrayList<Learner> alive = new ArrayList<Learner>(learners);
+		for (Learner l : alive)
+		{
+			l.games = games;
+			l.resetGames();
+		}
+		int next = 0;
+		int round = RACE_FIRST_GAMES;
+		while (next < RACE_GAMES)
+		{
+			int to = Math.min(RACE_GAMES, next + round);
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (Learner l : alive)
+			{
+				for (int g = next; g < to; g++)
+					tasks.add(gameTask(l, g));
+			}
+			playAll(tasks);
+			next = to;
+			round *= 2;
+			if (alive.size() <= RACE_MIN_ALIVE)
+				continue;
+			Collections.sort(alive);
+			int keep = Math.max(RACE_MIN_ALIVE, alive.size() / 2);
+			while (alive.size() > keep)
+				alive.remove(alive.size() - 1);
+		}
+	}
+
+	//plays game g of learner l
+	private static Callable<Void> gameTask(final Learner l, final int g)
+	{
+		return new Callable<Void>() {
+			public Void call()
+			{
+				l.playGame(g);
+				return null;
+			}
+		};
+	}
+
+	//runs the tasks on the scheduler and waits for all of them
+	//throws the first failure - every task has finished by then
+	private void playAll(List<Callable<Void>> tasks) throws ExecutionException, InterruptedException
+	{
+		for (Future<Void> f : scheduler.invokeAll(tasks))
+			f.get();
+	}
+
+	//evolves the population without a generation barrier - see STEADY_STATE
+	//throws if an evaluation failed, once the evaluations already running have finished
+	public void steadyStateRun(int totalRuns) throws IOException, ExecutionException, InterruptedException
+	{
+		ranked = new ConcurrentSkipListSet<Learner>(Learner.STEADY);
+		steadyGames = new GameSet(0, drawSteadyGames());
+		childrenLeft = new AtomicInteger(STEADY_CHILDREN);
+		childrenBred = new AtomicInteger();
+		evaluations = new AtomicInteger();
+		outstanding = new AtomicInteger(learners.size());
+		steadyDone = new CountDownLatch(1);
+		steadyFailure = new AtomicReference<Throwable>();
+		steadyRuns = totalRuns;
+		for (Learner l : learners)
+		{
+			l.fitness = -1;
+			start(l);
+		}
+		steadyDone.await();
+		if (steadyFailure.get() != null)
+			throw new ExecutionException(steadyFailure.get());
+		learners = new ArrayList<Learner>(ranked);
+		saveToFile(totalRuns + evaluations.get() / NUM_GEN, learners);
+	}
+
+	private PieceSequences drawSteadyGames()
+	{
+		return COMMON_GAMES ? new PieceSequences(gameSeeds.nextLong(), GAMES_PER_LEARNER, SEQUENCE_PREFIX) : null;
+	}
+
+	private Runnable evaluation(final Learner l)
+	{
+		return new Runnable() {
+			public void run()
+			{
+				try
+				{
+					if (steadyFailure.get() == null)
+					{
+						l.call();
+						evaluated(l);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					steadyFailure.compareAndSet(null, e);
+				}
+				finally
+				{
+					if (outstanding.decrementAndGet() == 0)
+						steadyDone.countDown();
+				}
+			}
+		};
+	}
+
+	//called on the worker that evaluated l
+	private void evaluated(Learner l)
+	{
+		ranked.add(l);
+		//the population is over size by at most one per finished evaluation, so each drops one -
+		//the worst of the oldest games, so children push out learners that were not scored again
+		if (ranked.size() > POP_SIZE)
+			ranked.pollLast();
+		int n = evaluations.incrementAndGet();
+		if (n % POP_SIZE == 0)
+			System.out.println(n + " " + ranked.first().fitness);
+		//keep about half the population in flight - the first batch keeps the cores busy until then,
+		//and this evaluation still counts
+		while (outstanding.get() <= POP_SIZE / 2)
+		{
+			if (!submitNext())
+				break;
+		}
+	}
+
+	//submits the next evaluation, or returns false if there is none to submit yet
+	private boolean submitNext()
+	{
+		GameSet current = steadyGames;
+		ArrayList<Learner> scored = new ArrayList<Learner>();
+		Learner stale = null;
+		for (Learner l : ranked)
+		{
+			if (l.epoch == current.epoch)
+				scored.add(l);
+			else if (l.epoch < current.epoch)
+			{
+				stale = l;
+				break;
+			}
+		}
+		//breed from learners scored on the current games once half the population is, and
+		//until then score the best learner of older games again - unless another thread took it
+		if (scored.size() < POP_SIZE / 2)
+		{
+			if (stale == null || !ranked.remove(stale))
+				return false;
+			stale.fitness = -1;
+			submit(stale);
+			return true;
+		}
+		if (childrenLeft.getAndDecrement() <= 0)
+			return false;
+		Random r = rng.get();
+		Learner child;
+		if (r.nextDouble() < REPRODUCTION_RATE)
+			child = tournamentMating(scored, r);
+		else
+			child = new Learner(r);
+		submit(child);
+		int bred = childrenBred.incrementAndGet();
+		if (bred % STEADY_SAVE == 0)
+			checkpoint();
+		if (bred % STEADY_REDRAW == 0 && bred < STEADY_CHILDREN && COMMON_GAMES)
+			redraw();
+		return true;
+	}
+
+	//evaluates a learner of the steady state population on the current games
+	private void submit(Learner l)
+	{
+		outstanding.incrementAndGet();
+		start(l);
+	}
+
+	private void start(Learner l)
+	{
+		GameSet current = steadyGames;
+		l.games = current.games;
+		l.epoch = current.epoch;
+		scheduler.execute(evaluation(l));
+	}
+
+	private synchronized void redraw()
+	{
+		steadyGames = new GameSet(steadyGames.epoch + 1, drawSteadyGames());
+	}
+
+	private synchronized void checkpoint()
+	{
+		try
+		{
+			saveToFile(steadyRuns + evaluations.get() / NUM_GEN, new ArrayList<Learner>(ranked));
+		}
+		catch (FileNotFoundException fnfe)
+		{
+			steadyFailure.compareAndSet(null, fnfe);
+		}
+	}
+
 	public Learner tournamentMating()
 	{
-		ArrayList<Integer> fittestTwo = tournament();
-		return reproduce(learners.get(fittestTwo.get(0)), learners.get(fittestTwo.get(1)));
+		return tournamentMating(learners, rng.get());
+	}
+
+	//tournamentMating on a population sorted fittest first
+	public static Learner tournamentMating(List<Learner> population, Random rng)
+	{
+		ArrayList<Integer> fittestTwo = tournament(population.size(), rng);
+		return reproduce(population.get(fittestTwo.get(0)), population.get(fittestTwo.get(1)), rng);
 	}
 
 	//returns 2 integers - the position of the 2 winners of the tournament
 	public ArrayList<Integer> tournament()
+	{
+		return tournament(POP_SIZE, rng.get());
+	}
+
+	//tournament among the first popSize learners
+	public static ArrayList<Integer> tournament(int popSize, Random rng)
 	{
 		ArrayList<Integer> tList = new ArrayList<Integer>();
 		//randomly select TOURNAMENT_SIZE people
 		for (int i = 0; i < TOURNAMENT_SIZE; i++)
 		{
-			tList.add((int)(Math.random()*POP_SIZE));
+			tList.add(rng.nextInt(popSize));
 		}
 		Collections.sort(tList);
 		//since Learners is sorted by fittest, the 2 smallest integers picked are the 2 fittest
@@ -136,18 +479,23 @@ public class LearningAlgorithm
 			currW = currW/2.0;
 			newW[i] = currW;
 		}
-		mutate(newW);
+		mutate(newW, rng.get());
 		return new Learner(newW);
 	}
 
+	public Learner reproduce(Learner first, Learner second)
+	{
+		return reproduce(first, second, rng.get());
+	}
+
 	/*
 	Takes in 2 learners.
 	Picks a random point in the weights. The new Learner has weights equal to the first parent up until the cutoff point.
 	Then the weights equal to the second parent afterwards.
 	*/
-	public Learner reproduce(Learner first, Learner second)
+	public static Learner reproduce(Learner first, Learner second, Random rng)
 	{
-		int crossoverPoint = (int)(Math.random()*Learner.NUM_WEIGHTS);
+		int crossoverPoint = rng.nextInt(Learner.NUM_WEIGHTS);
 		double[] newW = new double[Learner.NUM_WEIGHTS];
 		/*for (int i = 0; i < crossoverPoint; i++)
 		{
@@ -159,14 +507,14 @@ public class LearningAlgorithm
 		}*/
 		for (int i = 0; i < Learner.NUM_WEIGHTS; i++)
 		{
-			int selection = (int)Math.random()*2;
+			int selection = rng.nextInt(2);
 			if (selection == 0)
 				newW[i] = first.weights[i];
 			else
 				newW[i] = second.weights[i];
 		}
 		//perform mutation here
-		mutate(newW);
+		mutate(newW, rng);
 		return new Learner(newW);
 	}
 
@@ -175,14 +523,19 @@ public class LearningAlgorithm
 	Each weight is randomly mutated with chance MUTATION_RATE/MAX_MUTATION_RATE
 	*/
 	public void mutate(double[] weights)
+	{
+		mutate(weights, rng.get());
+	}
+
+	public static void mutate(double[] weights, Random rng)
 	{
 		for (int i = 0; i < Learner.NUM_WEIGHTS; i++)
 		{
-			int mutationChance = (int)(Math.random()*MAX_MUTATION_RATE);
+			int mutationChance = rng.nextInt(MAX_MUTATION_RATE);
 			if (mutationChance < MUTATION_RATE)
 			{
 				//randomly mutate the value by up to +/-25% of the initial range
-				weights[i] += Math.random()*(Learner.MAX_WEIGHT - Learner.MIN_WEIGHT)*MUTATION_AMOUNT - 0.5*MUTATION_AMOUNT*(Learner.MAX_WEIGHT - Learner.MIN_WEIGHT);
+				weights[i] += rng.nextDouble()*(Learner.MAX_WEIGHT - Learner.MIN_WEIGHT)*MUTATION_AMOUNT - 0.5*MUTATION_AMOUNT*(Learner.MAX_WEIGHT - Learner.MIN_WEIGHT);
 			}
 		}
 	}
@@ -191,7 +544,7 @@ public class LearningAlgorithm
 	{
 		PrintWriter out = new PrintWriter("weights.txt");
 		out.println(runs);
-		for (int j = 0; j < POP_SIZE; j++)
+		for (int j = 0; j < learners.size(); j++)
 		{
 			out.println(learners.get(j).toString());
 		}
@@ -232,26 +585,22 @@ public class LearningAlgorithm
 		}
 	}
 	*/
-	    public void executorRun() {
-        
-        List<Future<Integer>> fitnessLevels = new ArrayList<>();
-        
-        ExecutorService exec = Executors.newFixedThreadPool(THREAD_NUM);
-        
-        for (int i = 0; i < learners.size(); i++) {
-            Future<Integer> f = exec.submit(learners.get(i));
-            fitnessLevels.add(f);
-        }
-        
-        for (int i = 0; i < fitnessLevels.size(); i++) {
-            try {
-                Integer f = fitnessLevels.get(i).get();
-                learners.get(i).fitness = f;
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-    }
+	//scores every learner without a fitness, one scheduler task per game
+	public void executorRun() throws ExecutionException, InterruptedException
+	{
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < learners.size(); i++)
+		{
+			Learner l = learners.get(i);
+			if (l.fitness >= 0)
+				continue;
+			l.resetGames();
+			for (int g = 0; g < l.getGameCount(); g++)
+				tasks.add(gameTask(l, g));
+		}
+		playAll(tasks);
+	}
+
 	public static void main(String[] args)
 	{
 		LearningAlgorithm la = new LearningAlgorithm();
@@ -263,5 +612,14 @@ public class LearningAlgorithm
 		{
 			System.out.println(ioe.getMessage());
 		}
+		catch (ExecutionException ee)
+		{
+			//no selection on incomplete scores
+			System.out.println("game failed: " + ee.getCause());
+		}
+		catch (InterruptedException ie)
+		{
+			System.out.println("interrupted");
+		}
 	}
 }
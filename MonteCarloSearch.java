@@ -0,0 +1,196 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Monte Carlo rollout player.
+//Every root move is scored by many short rollouts: after the move, rolloutDepth sampled
+//pieces are each placed greedily by the 1-ply heuristic (the same policy as
+//PlayerSkeleton.pickMove), and the rollout ends either lost or on a board worth its
+//heuristic. The move with the smallest fraction of lost rollouts wins, and among those the
+//one with the best mean heuristic over the rollouts it survived - a single loss no longer
+//swamps a mean with Integer.MIN_VALUE.
+//
+//Rollout r plays the same piece sequence under every root move (common random numbers),
+//so moves are compared on identical futures. The sequences come from seed, which
+//advances every decision.
+//
+//Every root move first plays its first MIN_ROLLOUTS rollouts whatever the time budget.
+//The rest are interleaved across root moves: rollout r is played under every root move
+//before the time budget is checked again, so every move gets the same number of them.
+//
+//Rollouts are spread over a fork/join pool in chunks. Each worker plays on its own
+//scratch board, undo record and piece generator, so the rollouts themselves allocate
+//nothing. Without a time budget the result only depends on the seed, not on the
+//number of threads.
+class MonteCarloSearch {
+	//rollouts a task plays itself, each under every root move
+	public static int CHUNK = 4;
+	//rollouts per root move played even after the deadline
+	public static int MIN_ROLLOUTS = 1;
+
+	private final PlayerSkeleton player;
+	private final ForkJoinPool pool;
+
+	//rollouts per root move
+	public int rollouts = 64;
+	//pieces placed in each rollout after the root move
+	public int rolloutDepth = 8;
+	//0 for no time limit - otherwise rollouts not started within this many ms are skipped
+	public long budgetMillis = 0;
+	public long seed = 1;
+
+	//rollouts played by the last pickMove
+	private volatile long played;
+
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private static class Scratch {
+		NextState board = new NextState();
+		MoveUndo rootUndo = new MoveUndo();
+		MoveUndo stepUndo = new MoveUndo();
+		MoveUndo leafUndo = new MoveUndo();
+		XoroshiroPieceSource pieces = new XoroshiroPieceSource(0);
+		double[] features = new double[Features.NUM_FEATURES];
+	}
+
+	public MonteCarloSearch(PlayerSkeleton player) {
+		this(player, ForkJoinPool.commonPool());
+	}
+
+	public MonteCarloSearch(PlayerSkeleton player, ForkJoinPool pool) {
+		this.player = player;
+		this.pool = pool;
+	}
+
+	int pickMove(BitBoard root, int piece, int[][] legalMoves) {
+		int moves = legalMoves.length;
+		//outcome of rollout r under root move i, at [r * moves + i]
+		double[] values = new double[rollouts * moves];
+		boolean[] lost = new boolean[rollouts * moves];
+		boolean[] done = new boolean[rollouts * moves];
+		long deadline = budgetMillis > 0 ? System.nanoTime() + budgetMillis * 1000000L : Long.MAX_VALUE;
+		long base = seed;
+		seed += 0x9E3779B97F4A7C15L;
+		int min = Math.max(0, Math.min(MIN_ROLLOUTS, rollouts));
+		pool.invoke(new Rollouts(root, piece, legalMoves, base, Long.MAX_VALUE, values, lost, done, 0, min));
+		pool.invoke(new Rollouts(root, piece, legalMoves, base, deadline, values, lost, done, min, rollouts));
+
+		long total = 0;
+		int bestMove = 0;
+		double bestLossRate = Double.POSITIVE_INFINITY;
+		double maxSoFar = Integer.MIN_VALUE;
+		for (int i = 0; i < moves; i++) {
+			int n = 0;
+			int losses = 0;
+			double sum = 0;
+			for (int r = 0; r < rollouts; r++) {
+				int slot = r * moves + i;
+				if (!done[slot])
+					continue;
+				n++;
+				if (lost[slot])
+					losses++;
+				else
+					sum += values[slot];
+			}
+			total += n;
+			if (n == 0)
+				continue;
+			double lossRate = (double) losses / n;
+			double currValue = losses < n ? sum / (n - losses) : Integer.MIN_VALUE;
+			if (lossRate < bestLossRate || (lossRate == bestLossRate && currValue > maxSoFar)) {
+				bestLossRate = lossRate;
+				maxSoFar = currValue;
+				bestMove = i;
+			}
+		}
+		played = total;
+		return bestMove;
+	}
+
+	public long getRolloutsPlayed() {
+		return played;
+	}
+
+	private class Rollouts extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final BitBoard root;
+		final int piece;
+		final int[][] legalMoves;
+		final long base, deadline;
+		final double[] values;
+		final boolean[] lost, done;
+		//rollouts [lo, hi)
+		final int lo, hi;
+
+		Rollouts(BitBoard root, int piece, int[][] legalMoves, long base, long deadline,
+				double[] values, boolean[] lost, boolean[] done, int lo, int hi) {
+			this.root = root;
+			this.piece = piece;
+			this.legalMoves = legalMoves;
+			this.base = base;
+			this.deadline = deadline;
+			this.values = values;
+			this.lost = lost;
+			this.done = done;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo <= CHUNK) {
+				play(scratch.get());
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Rollouts(root, piece, legalMoves, base, deadline, values, lost, done, lo, mid),
+					new Rollouts(root, piece, legalMoves, base, deadline, values, lost, done, mid, hi));
+		}
+
+		//rollouts [lo, hi), each under every root move
+		private void play(Scratch sc) {
+			int moves = legalMoves.length;
+			for (int r = lo; r < hi; r++) {
+				if (System.nanoTime() >= deadline)
+					break;
+				for (int i = 0; i < moves; i++) {
+					int slot = r * moves + i;
+					sc.pieces.setSeed(base + r);
+					values[slot] = rollout(sc, i);
+					lost[slot] = sc.board.hasLost();
+					done[slot] = true;
+				}
+			}
+		}
+
+		//heuristic of the board one rollout under root move i ends on - the scratch board is left
+		//there, so the caller can check for a loss
+		private double rollout(Scratch sc, int i) {
+			NextState ns = sc.board;
+			ns.reset(root, piece, 0);
+			ns.applyMove(i, sc.rootUndo);
+			for (int d = 0; d < rolloutDepth && !ns.hasLost(); d++) {
+				int next = sc.pieces.nextPiece();
+				int[][] moves = ns.legalMoves(next);
+				int best = 0;
+				double maxSoFar = Integer.MIN_VALUE;
+				for (int k = 0; k < moves.length; k++) {
+					ns.applyMove(next, moves[k][State.ORIENT], moves[k][State.SLOT], sc.leafUndo);
+					double value = player.getHeuristic(ns, sc.features);
+					ns.undoMove(sc.leafUndo);
+					if (value > maxSoFar) {
+						maxSoFar = value;
+						best = k;
+					}
+				}
+				//never undone - the next rollout starts again from root
+				ns.applyMove(next, moves[best][State.ORIENT], moves[best][State.SLOT], sc.stepUndo);
+			}
+			return player.getHeuristic(ns, sc.features);
+		}
+	}
+}
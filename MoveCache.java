@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//Persistent (board, piece) -> move cache in a memory-mapped file.
+//A search always picks the same move for the same board, piece and weights, and low
+//boards recur all the time across games, so the move is kept on disk and any JVM that
+//maps the same file can skip the search next time.
+//
+//Only boards whose columns are all at most KEYED_ROWS high are cached. Their rows pack
+//into two longs (6 rows of 10 bits each), with the piece above the first word's rows.
+//The third key word is a hash of the weights and the search, see weightsKey. The rows
+//cleared so far are not part of the key, since they add the same amount to every move.
+//
+//The file is a header and a fixed table of SLOT_BYTES slots, probed like
+//TranspositionCache. Slots carry a check word over the key and move, written last. A
+//reader that sees a half-written slot from another JVM or thread gets a bad check
+//and treats it as a miss, so there are no locks. The writes are plain puts, so a move is
+//also only trusted if it indexes the caller's legal moves.
+class MoveCache {
+	public static final int COLS = BitBoard.COLS;
+	public static final int KEYED_ROWS = 12;
+	public static final int PROBE_LIMIT = 4;
+
+	private static final int ROWS_PER_WORD = 6;
+	private static final long MAGIC = 0x54455452494D4331L;
+	private static final int HEADER_BYTES = 16;
+	//key words k0, k1, k2, then the move, then the check word
+	private static final int SLOT_BYTES = 40;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final int mask;
+
+	private long hits, misses, skipped;
+
+	//maps fileName, creating it with capacity slots (rounded up to a power of two) if it is new
+	//or empty - an existing file keeps its own capacity
+	public MoveCache(String fileName, int capacity) throws IOException {
+		File f = new File(fileName);
+		if(f.length() > 0 && f.length() < HEADER_BYTES)
+			throw new IOException(fileName + " is not a move cache - its header is truncated");
+		boolean existed = f.length() > 0;
+		file = new RandomAccessFile(f, "rw");
+		channel = file.getChannel();
+		int cap;
+		if(existed) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if(header.getLong(0) != MAGIC) {
+				close();
+				throw new IOException(fileName + " is not a move cache");
+			}
+			cap = header.getInt(8);
+		}
+		else {
+			cap = Integer.highestOneBit(Math.max(capacity, PROBE_LIMIT) - 1) << 1;
+		}
+		if((long) cap * SLOT_BYTES > Integer.MAX_VALUE - HEADER_BYTES) {
+			close();
+			throw new IOException("move cache of " + cap + " slots is too large to map");
+		}
+		mask = cap - 1;
+		map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) cap * SLOT_BYTES);
+		if(!existed) {
+			map.putInt(8, cap);
+			map.putLong(0, MAGIC);
+		}
+	}
+
+	//key word for a weight vector and the search that picks the moves
+	public static long weightsKey(double[] weights, int search) {
+		long h = search * 0x9E3779B97F4A7C15L;
+		for(double w : weights) {
+			h = (h ^ Double.doubleToLongBits(w)) * 0xC2B2AE3D27D4EB4FL;
+			h ^= h >>> 29;
+		}
+		return h;
+	}
+
+	//cached move index for piece on board, or -1 - an index outside [0, moveCount) is a miss
+	public int lookup(BitBoard b, int piece, long weightsKey, int moveCount) {
+		if(!keyed(b)) {
+			skipped++;
+			return -1;
+		}
+		long k0 = pack(b.rows, 0) | ((long) piece << (ROWS_PER_WORD*COLS));
+		long k1 = pack(b.rows, ROWS_PER_WORD);
+		int home = home(k0, k1, weightsKey);
+		for(int p = 0; p < PROBE_LIMIT; p++) {
+			int at = offset((home + p) & mask);
+			if(map.getLong(at) == k0 && map.getLong(at+8) == k1 && map.getLong(at+16) == weightsKey) {
+				int move = map.getInt(at+24);
+				if(move >= 0 && move < moveCount && map.getLong(at+32) == check(k0, k1, weightsKey, move)) {
+					hits++;
+					return move;
+				}
+			}
+		}
+		misses++;
+		return -1;
+	}
+
+	public void store(BitBoard b, int piece, long weightsKey, int move) {
+		if(!keyed(b))
+			return;
+		long k0 = pack(b.rows, 0) | ((long) piece << (ROWS_PER_WORD*COLS));
+		long k1 = pack(b.rows, ROWS_PER_WORD);
+		int home = home(k0, k1, weightsKey);
+		int target = home;
+		for(int p = 0; p < PROBE_LIMIT; p++) {
+			int slot = (home + p) & mask;
+			if(map.getLong(offset(slot)+32) == 0) {
+				target = slot;
+				break;
+			}
+		}
+		int at = offset(target);
+		//clear the check first so no reader trusts the slot while it changes
+		map.putLong(at+32, 0);
+		map.putLong(at, k0);
+		map.putLong(at+8, k1);
+		map.putLong(at+16, weightsKey);
+		map.putInt(at+24, move);
+		map.putLong(at+32, check(k0, k1, weightsKey, move));
+	}
+
+	//flushes the table to the file - do not use the cache afterwards
+	public void close() throws IOException {
+		if(map != null)
+			map.force();
+		channel.close();
+		file.close();
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	//lookups on boards too high to be keyed
+	public long getSkipped() {
+		return skipped;
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	private static boolean keyed(BitBoard b) {
+		for(int c = 0; c < COLS; c++) {
+			if(b.top[c] > KEYED_ROWS)	return false;
+		}
+		return true;
+	}
+
+	private int home(long k0, long k1, long k2) {
+		long h = k0 * 0x9E3779B97F4A7C15L;
+		h = (h ^ k1) * 0xC2B2AE3D27D4EB4FL;
+		h = (h ^ k2) * 0x165667B19E3779F9L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+
+	//never 0, which marks an empty slot
+	private static long check(long k0, long k1, long k2, int move) {
+		long h = (k0 ^ 0x165667B19E3779F9L) * 0x9E3779B97F4A7C15L;
+		h = (h ^ k1) * 0xC2B2AE3D27D4EB4FL;
+		h = (h ^ k2) * 0x9E3779B97F4A7C15L;
+		h = (h ^ move) * 0xC2B2AE3D27D4EB4FL;
+		h ^= h >>> 31;
+		return h == 0 ? 1 : h;
+	}
+
+	private static int offset(int slot) {
+		return HEADER_BYTES + slot * SLOT_BYTES;
+	}
+
+	private static long pack(int[] rows, int from) {
+		long w = 0;
+		for(int r = from; r < from + ROWS_PER_WORD; r++) {
+			w |= (long) rows[r] << (COLS*(r - from));
+		}
+		return w;
+	}
+}
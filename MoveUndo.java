@@ -0,0 +1,19 @@
+//Undo information for one BitBoard.place call.
+//Filled in by place(...) and consumed by BitBoard.undo(...) to restore the board exactly.
+//Allocate one per search ply and reuse it - nothing in here is allocated per move.
+class MoveUndo {
+	//false if the move lost the game - then nothing but the lost flag was touched
+	boolean placed;
+	boolean wasLost;
+
+	int piece, orient, slot;
+	//row the bottom of the piece landed on
+	int height;
+
+	//top of each column before the move
+	int[] top = new int[State.COLS];
+
+	//rows removed by the move, in the order they were removed (highest first)
+	int[] clearedRows = new int[4];
+	int nCleared;
+}
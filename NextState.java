@@ -0,0 +1,291 @@
+class NextState {
+	public static final int COLS = 10;
+	public static final int ROWS = 21;
+	public static final int N_PIECES = 7;
+
+	//current turn
+	private int turn = 0;
+	
+	//the grid, one bit mask per row - see BitBoard
+	private BitBoard board = new BitBoard();
+	//shortcut to board.top
+	private int[] top = board.top;
+	
+	
+	//number of next piece
+	protected int nextPiece;
+	
+	//all legal moves - first index is piece type - then a list of 2-length arrays
+	//shared with PieceCatalog - do not modify
+	protected static final int[][][] legalMoves = PieceCatalog.legalMoves;
+	
+	//indices for legalMoves
+	public static final int ORIENT = 0;
+	public static final int SLOT = 1;
+	
+	
+	//materialized from the bitboard on demand - 0 is empty, 1 is filled
+	public int[][] getField() {
+		return board.getField();
+	}
+
+	public int[] getTop() {
+		return top;
+	}
+
+    public static int[] getpOrients() {
+        return PieceCatalog.pOrients;
+    }
+    
+    public static int[][] getpWidth() {
+        return PieceCatalog.pWidth;
+    }
+
+    public static int[][] getpHeight() {
+        return PieceCatalog.pHeight;
+    }
+
+    public static int[][][] getpBottom() {
+        return PieceCatalog.pBottom;
+    }
+
+    public static int[][][] getpTop() {
+        return PieceCatalog.pTop;
+    }
+
+
+	public int getNextPiece() {
+		return nextPiece;
+	}
+	
+	public boolean hasLost() {
+		return board.lost;
+	}
+	
+	public int getRowsCleared() {
+		return board.cleared;
+	}
+
+	BitBoard getBoard() {
+		return board;
+	}
+	
+	public int getTurnNumber() {
+		return turn;
+	}
+	
+	//constructor
+	public NextState() {
+	}
+	
+	//Populating the nextState field
+	public NextState(int[][] grid, int[] oldTop, int nPiece)
+	{
+		board.load(grid, oldTop);
+		nextPiece = nPiece;
+	}
+	
+	//Constructor overload for lookahead
+	public NextState(int[][] grid, int[] oldTop, int nPiece, int rCleared)
+	{
+		board.load(grid, oldTop);
+		nextPiece = nPiece;
+		board.cleared = rCleared;
+	}
+	
+	//Copies the board directly, without going through the int[][] view
+	public NextState(BitBoard grid, int nPiece, int rCleared)
+	{
+		reset(grid, nPiece, rCleared);
+	}
+	
+	//Reuses this NextState for a new board, same as the constructor above but without allocating
+	public void reset(BitBoard grid, int nPiece, int rCleared)
+	{
+		board.copyFrom(grid);
+		nextPiece = nPiece;
+		board.cleared = rCleared;
+		turn = 0;
+	}
+	
+	//gives legal moves for 
+	public int[][] legalMoves() {
+		return legalMoves[nextPiece];
+	}
+	
+	//gives legal moves for input piece
+	public int[][] legalMoves(int n) {
+		return legalMoves[n];
+	}
+	
+	//make a move based on the move index - its order in the legalMoves list
+	public void makeMove(int move) {
+		makeMove(legalMoves[nextPiece][move]);
+	}
+	
+	//make a move based on an array of orient and slot
+	public void makeMove(int[] move) {
+		makeMove(move[ORIENT],move[SLOT]);
+	}
+	
+	//returns false if you lose - true otherwise
+	public boolean makeMove(int orient, int slot) {
+		turn++;
+		return board.place(nextPiece, orient, slot);
+	}
+	
+	//in-place versions of makeMove for search - the move is recorded in undo so undoMove can take it back
+	//returns false if you lose - true otherwise
+	public boolean applyMove(int move, MoveUndo undo) {
+		int[] m = legalMoves[nextPiece][move];
+		return applyMove(nextPiece, m[ORIENT], m[SLOT], undo);
+	}
+	
+	public boolean applyMove(int orient, int slot, MoveUndo undo) {
+		return applyMove(nextPiece, orient, slot, undo);
+	}
+	
+	//places the given piece instead of nextPiece
+	public boolean applyMove(int piece, int orient, int slot, MoveUndo undo) {
+		turn++;
+		return board.place(piece, orient, slot, undo);
+	}
+	
+	//applyMove with the bottom of the piece at row height, e.g. a tuck from ReachableMoves
+	public boolean applyMoveAt(int piece, int orient, int slot, int height, MoveUndo undo) {
+		turn++;
+		return board.placeAt(piece, orient, slot, height, undo);
+	}
+	
+	//takes back the move recorded in undo - moves must be undone last made first
+	public void undoMove(MoveUndo undo) {
+		turn--;
+		board.undo(undo);
+	}
+	
+	//keep the features up to date inside makeMove/applyMove instead of recomputing them - see FeatureTracker
+	public void setIncremental(boolean on)
+	{
+		board.setIncremental(on);
+	}
+	
+	//all features in one pass - see Features for the layout of out
+	public void getFeatures(double[] out)
+	{
+		Features.extract(board, out);
+	}
+	
+	public int getColumnHeight(int col)
+	{
+		return top[col];
+	}
+	
+	//difference between col and col+1.
+	public int getColumnHeightDiff(int col)
+	{
+		return Math.abs(top[col] - top[col+1]);
+	}
+	
+	public int getMaxColumnHeight()
+	{
+		int maxH = 0;
+		for (int i = 0; i < COLS; i++)
+			maxH = Math.max(maxH, top[i]);
+		return maxH;
+	}
+	
+	public double getHoles()
+	{
+		
+		int[] top = getTop();
+		
+		int numHoles = 0;
+		for (int j = 0;  j < COLS;  j++) 
+		{
+			if (top[j] != 0) {
+				for (int i = top[j] - 1;  i >= 0;  i--) 
+				{
+					if (!board.filled(i, j)) {
+						numHoles++;
+					}
+				}
+			}
+		}
+		return (double) numHoles * 10;
+	}
+	
+	//For each column, go to every row from bottom. Find the first hole and count number of blocks on this hole
+	public int getBlocksOnHoles(){
+	    int blocksOnHole = 0;
+	    int [] topOfEachColumn = getTop();
+	    for(int col = 0; col < COLS; col++)
+		{
+	        boolean foundHole = false;
+	        for(int row = 0; row <= topOfEachColumn[col]; row++)
+			{
+	           if(!foundHole && !board.filled(row, col))
+			   {
+	               foundHole = true;
+               }
+               else if(foundHole && board.filled(row, col))
+			   {
+	               blocksOnHole++;
+               }
+            }
+        }
+	    return blocksOnHole;
+    }
+	
+	public double getRowTransition()
+	{
+		int[] rows = board.rows;
+		int rowTransitions = 0;
+		int lastCell = 1;
+		for (int i = 0;  i < ROWS;  i++) {
+			for (int j = 0;  j < COLS;  j++) {
+				int cell = (rows[i] >>> j) & 1;
+				if ((cell == 0) != (lastCell == 0)) {
+					rowTransitions++;
+				}
+				lastCell = cell;
+			}
+			if (lastCell == 0) rowTransitions++;
+		}
+		return (double) rowTransitions;
+	}
+	
+	public double getColTransition()
+	{
+		int colTransitions = 0;
+		for (int j = 0;  j < State.COLS;  j++) {
+			for (int i = top[j] - 2;  i >= 0;  i--) {
+				if (board.filled(i, j) != board.filled(i + 1, j)) {
+					colTransitions++;
+				}
+			}
+			if (!board.filled(0, j) && top[j] > 0) colTransitions++;
+		}
+		return (double) colTransitions;
+	}
+	
+	public double wellFeature()
+	{
+		int wellSum = 0;
+		for (int j = 0;  j < COLS;  j++) {
+			for (int i = ROWS -1;  i >= 0;  i--) {
+				if (!board.filled(i, j)) {
+					if (j == 0 || board.filled(i, j - 1)) {
+						if (j == State.COLS - 1 || board.filled(i, j + 1)) {
+							int wellHeight = i - top[j] + 1;
+							wellSum += wellHeight * (wellHeight + 1) / 2;
+						}
+					}
+				} else {
+					break;
+				}
+			}
+		}
+		return (double) wellSum;
+	}
+	
+}
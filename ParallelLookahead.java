@@ -0,0 +1,146 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Fork/join version of PlayerSkeleton.pickMoveLookahead.
+//The 2-ply search is split into one branch per root move. Each worker thread applies the
+//root move once on its own scratch board and searches the 7 next pieces under it with
+//apply/undo. When there are fewer root moves than the pool has threads (the O piece has 9),
+//it is split further into one branch per (root move, next piece) pair, which applies the
+//root move once per piece instead. The values are summed and compared on the calling thread
+//in the same order as the sequential search, so the chosen move (including tie breaks) is
+//exactly what pickMoveLookahead would pick.
+class ParallelLookahead {
+	public static final int N_PIECES = State.N_PIECES;
+	//branches a task searches itself instead of splitting further
+	public static int THRESHOLD = 1;
+
+	private final PlayerSkeleton player;
+	private final ForkJoinPool pool;
+
+	//per worker scratch - board, undo records and feature buffer
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private static class Scratch {
+		NextState board = new NextState();
+		MoveUndo rootUndo = new MoveUndo();
+		MoveUndo leafUndo = new MoveUndo();
+		double[] features = new double[Features.NUM_FEATURES];
+	}
+
+	public ParallelLookahead(PlayerSkeleton player) {
+		this(player, ForkJoinPool.commonPool());
+	}
+
+	public ParallelLookahead(PlayerSkeleton player, ForkJoinPool pool) {
+		this.player = player;
+		this.pool = pool;
+	}
+
+	int pickMove(BitBoard root, int piece, int[][] legalMoves) {
+		boolean byPiece = legalMoves.length < pool.getParallelism();
+		//value of every root move, or of every (root move, next piece) pair
+		double[] values = new double[byPiece ? legalMoves.length * N_PIECES : legalMoves.length];
+		pool.invoke(new Branches(root, piece, legalMoves, byPiece, values, 0, values.length));
+
+		int bestMove = 0;
+		double maxSoFar = Integer.MIN_VALUE;
+		for (int i = 0; i < legalMoves.length; i++) {
+			double currValue;
+			if (byPiece) {
+				//same summation order as pickMoveLookahead
+				double sum = 0;
+				for (int j = 0; j < N_PIECES; j++)
+					sum += values[i * N_PIECES + j];
+				currValue = sum / N_PIECES;
+			}
+			else {
+				currValue = values[i];
+			}
+			if (currValue > maxSoFar) {
+				maxSoFar = currValue;
+				bestMove = i;
+			}
+		}
+		return bestMove;
+	}
+
+	private class Branches extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final BitBoard root;
+		final int piece;
+		final int[][] legalMoves;
+		final boolean byPiece;
+		final double[] values;
+		final int lo, hi;
+
+		Branches(BitBoard root, int piece, int[][] legalMoves, boolean byPiece, double[] values, int lo, int hi) {
+			this.root = root;
+			this.piece = piece;
+			this.legalMoves = legalMoves;
+			this.byPiece = byPiece;
+			this.values = values;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		protected void compute() {
+			if (hi - lo <= THRESHOLD) {
+				Scratch sc = scratch.get();
+				for (int b = lo; b < hi; b++) {
+					values[b] = byPiece ? pieceBranch(sc, b / N_PIECES, b % N_PIECES) : branch(sc, b);
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(new Branches(root, piece, legalMoves, byPiece, values, lo, mid),
+					new Branches(root, piece, legalMoves, byPiece, values, mid, hi));
+		}
+
+		//root move i averaged over the best placement of every next piece
+		private double branch(Scratch sc, int i) {
+			NextState ns = sc.board;
+			ns.reset(root, piece, 0);
+			ns.applyMove(i, sc.rootUndo);
+			//every piece after a losing move is lost too
+			if (ns.hasLost())
+				return Integer.MIN_VALUE;
+
+			//same summation order as pickMoveLookahead
+			double sum = 0;
+			for (int j = 0; j < N_PIECES; j++)
+				sum += bestPlacement(sc, j);
+			return sum / N_PIECES;
+		}
+
+		//root move i followed by the best placement of next piece j - a lost root move is
+		//Integer.MIN_VALUE for every piece, so the sum pickMove takes is still lost
+		private double pieceBranch(Scratch sc, int i, int j) {
+			NextState ns = sc.board;
+			ns.reset(root, piece, 0);
+			ns.applyMove(i, sc.rootUndo);
+			if (ns.hasLost())
+				return Integer.MIN_VALUE;
+			return bestPlacement(sc, j);
+		}
+
+		//heuristic of the best placement of piece j on the scratch board, which is left unchanged
+		private double bestPlacement(Scratch sc, int j) {
+			NextState ns = sc.board;
+			int[][] nextMoves = ns.legalMoves(j);
+			double maxSoFar = Integer.MIN_VALUE;
+			for (int k = 0; k < nextMoves.length; k++) {
+				ns.applyMove(j, nextMoves[k][State.ORIENT], nextMoves[k][State.SLOT], sc.leafUndo);
+				double currValue = player.getHeuristic(ns, sc.features);
+				ns.undoMove(sc.leafUndo);
+				if (currValue > maxSoFar)
+					maxSoFar = currValue;
+			}
+			return maxSoFar;
+		}
+	}
+}
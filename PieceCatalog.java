@@ -0,0 +1,102 @@
+//The piece vocabulary shared by State, NextState, BitBoard and TFrame.
+//Everything here is built once when the class is loaded and never written afterwards,
+//so it is safe to read from any number of threads without copying or locking.
+final class PieceCatalog {
+	public static final int COLS = State.COLS;
+	public static final int N_PIECES = State.N_PIECES;
+
+	//all legal moves - first index is piece type - then a list of 2-length arrays
+	static final int[][][] legalMoves = new int[N_PIECES][][];
+	
+	//indices for legalMoves
+	public static final int ORIENT = 0;
+	public static final int SLOT = 1;
+	
+	//possible orientations for a given piece type
+	static final int[] pOrients = {1,2,4,4,4,2,2};
+	
+	//the next several arrays define the piece vocabulary in detail
+	//width of the pieces [piece ID][orientation]
+	static final int[][] pWidth = {
+			{2},
+			{1,4},
+			{2,3,2,3},
+			{2,3,2,3},
+			{2,3,2,3},
+			{3,2},
+			{3,2}
+	};
+	//height of the pieces [piece ID][orientation]
+	static final int[][] pHeight = {
+			{2},
+			{4,1},
+			{3,2,3,2},
+			{3,2,3,2},
+			{3,2,3,2},
+			{2,3},
+			{2,3}
+	};
+	static final int[][][] pBottom = {
+		{{0,0}},
+		{{0},{0,0,0,0}},
+		{{0,0},{0,1,1},{2,0},{0,0,0}},
+		{{0,0},{0,0,0},{0,2},{1,1,0}},
+		{{0,1},{1,0,1},{1,0},{0,0,0}},
+		{{0,0,1},{1,0}},
+		{{1,0,0},{0,1}}
+	};
+	static final int[][][] pTop = {
+		{{2,2}},
+		{{4},{1,1,1,1}},
+		{{3,1},{2,2,2},{3,3},{1,1,2}},
+		{{1,3},{2,1,1},{3,3},{2,2,2}},
+		{{3,2},{2,2,2},{2,3},{1,2,1}},
+		{{1,2,2},{3,2}},
+		{{2,2,1},{2,3}}
+	};
+	
+	//mask of the piece cells in each row of the piece, for slot 0 [piece ID][orientation][row]
+	static final int[][][] pRowMask = new int[N_PIECES][][];
+
+	//initialize legalMoves and pRowMask
+	static {
+		//for each piece type
+		for(int i = 0; i < N_PIECES; i++) {
+			//figure number of legal moves
+			int n = 0;
+			for(int j = 0; j < pOrients[i]; j++) {
+				//number of locations in this orientation
+				n += COLS+1-pWidth[i][j];
+			}
+			//allocate space
+			legalMoves[i] = new int[n][2];
+			//for each orientation
+			n = 0;
+			for(int j = 0; j < pOrients[i]; j++) {
+				//for each slot
+				for(int k = 0; k < COLS+1-pWidth[i][j];k++) {
+					legalMoves[i][n][ORIENT] = j;
+					legalMoves[i][n][SLOT] = k;
+					n++;
+				}
+			}
+		}
+		
+		//for each piece type
+		for(int i = 0; i < N_PIECES; i++) {
+			pRowMask[i] = new int[pOrients[i]][];
+			//for each orientation
+			for(int j = 0; j < pOrients[i]; j++) {
+				pRowMask[i][j] = new int[pHeight[i][j]];
+				for(int c = 0; c < pWidth[i][j]; c++) {
+					for(int h = pBottom[i][j][c]; h < pTop[i][j][c]; h++) {
+						pRowMask[i][j][h] |= 1 << c;
+					}
+				}
+			}
+		}
+	}
+
+	private PieceCatalog() {
+	}
+}
@@ -0,0 +1,67 @@
+//A set of reproducible piece sequences that every learner of a generation plays, so
+//fitness differences come from the weights and not from one learner drawing easier games
+//(common random numbers).
+//
+//Game i plays the sequence of new XoroshiroPieceSource(seed of game i). The first
+//prefixLength pieces of each game are generated once and packed 21 pieces to a long
+//(3 bits each), so the set stays small and can be read by any number of threads at once.
+//A game that outlives its prefix carries on with its own generator, fast-forwarded to
+//the same point, so the sequence is identical whatever the prefix length.
+class PieceSequences {
+	private static final int BITS = 3;
+	private static final int PER_WORD = 64 / BITS;
+
+	private final long[] gameSeeds;
+	private final int prefixLength;
+	//packed prefixes, [game][word]
+	private final long[][] packed;
+
+	public PieceSequences(long seed, int games, int prefixLength) {
+		this.prefixLength = prefixLength;
+		gameSeeds = new long[games];
+		packed = new long[games][(prefixLength + PER_WORD - 1) / PER_WORD];
+		XoroshiroPieceSource root = new XoroshiroPieceSource(seed);
+		for(int g = 0; g < games; g++) {
+			gameSeeds[g] = root.nextLong();
+			XoroshiroPieceSource src = new XoroshiroPieceSource(gameSeeds[g]);
+			long[] words = packed[g];
+			for(int i = 0; i < prefixLength; i++) {
+				words[i / PER_WORD] |= (long) src.nextPiece() << (BITS * (i % PER_WORD));
+			}
+		}
+	}
+
+	public int getGames() {
+		return gameSeeds.length;
+	}
+
+	//a new reader of game g's sequence - each game played needs its own
+	public PieceSource source(int g) {
+		return new Reader(g);
+	}
+
+	private class Reader implements PieceSource {
+		private final long[] words;
+		private final long gameSeed;
+		private int next;
+		private XoroshiroPieceSource overflow;
+
+		Reader(int g) {
+			words = packed[g];
+			gameSeed = gameSeeds[g];
+		}
+
+		public int nextPiece() {
+			if(next < prefixLength) {
+				int i = next++;
+				return (int) (words[i / PER_WORD] >>> (BITS * (i % PER_WORD))) & 7;
+			}
+			if(overflow == null) {
+				overflow = new XoroshiroPieceSource(gameSeed);
+				for(int i = 0; i < prefixLength; i++)
+					overflow.nextLong();
+			}
+			return overflow.nextPiece();
+		}
+	}
+}
@@ -0,0 +1,6 @@
+//Where a State gets its pieces from.
+//Each State owns its own source, so concurrent games never share generator state.
+interface PieceSource {
+	//next piece ID, 0 to State.N_PIECES-1
+	int nextPiece();
+}
@@ -4,6 +4,54 @@ import java.io.*;
 public class PlayerSkeleton {
 
 	public double[] weights;
+	
+	//search id for MoveCache keys
+	private static final int LOOKAHEAD_SEARCH = 2;
+	
+	//settings for pickMoveExpectimax - deepest search, and the time allowed per decision
+	public int searchDepth = 3;
+	public long moveTimeMillis = 100;
+	//settings for pickMoveLookaheadPruned - root moves expanded to 2-ply are the best pruneTopK
+	//by 1-ply heuristic plus any within pruneMargin of the best (a negative margin turns that off)
+	public int pruneTopK = 5;
+	public double pruneMargin = -1;
+	//settings for pickMoveMonteCarlo - rollouts per root move, pieces per rollout,
+	//and the time allowed per decision (0 plays every rollout)
+	public int rollouts = 64;
+	public int rolloutDepth = 8;
+	public long rolloutTimeMillis = 0;
+	//setting for pickMoveAdversarial - placements searched, 2 matching pickMoveLookahead
+	public int adversarialDepth = 2;
+	
+	//scratch board for the searches - moves are applied and undone on it instead of copying the board
+	private NextState scratch = new NextState();
+	//one undo record per search ply
+	private MoveUndo[] undo = {new MoveUndo(), new MoveUndo()};
+	//feature vector buffer for getHeuristic
+	private double[] features = new double[Features.NUM_FEATURES];
+	//heuristic values of lookahead leaves - null unless enableCache is called
+	private TranspositionCache cache;
+	//moves picked by pickMoveLookahead, shared through a file - null unless enableMoveCache is called
+	private MoveCache moveCache;
+	//fork/join version of pickMoveLookahead - created on first use
+	private ParallelLookahead parallel;
+	//iterative deepening search for pickMoveExpectimax - created on first use
+	private ExpectimaxSearch expectimax;
+	//second ply of pickMoveLookaheadBulk - created on first use
+	private AfterstateGenerator generator;
+	private AfterstateGenerator.Buffer afterstates;
+	//rollout search for pickMoveMonteCarlo - created on first use
+	private MonteCarloSearch monteCarlo;
+	//worst-case search for pickMoveAdversarial - created on first use
+	private AdversarialSearch adversarial;
+	//move generator for pickMoveReachable and the placements it found - created on first use
+	private ReachableMoves reachable;
+	private ReachableMoves.Moves reachableMoves;
+	//early-cutoff evaluator for pickMoveBounded - created on first use
+	private BoundedEvaluator bounded;
+	//1-ply scores of the root moves for pickMoveLookaheadPruned, and a copy for sorting
+	private double[] rootScores = new double[64];
+	private double[] sortedScores = new double[64];
 
 	public PlayerSkeleton()
 	{
@@ -26,13 +74,20 @@ public class PlayerSkeleton {
 	
 	//implement this function to have a working system
 	public int pickMove(State s, int[][] legalMoves) {
+		return pickMove(s.getBoard(), s.getNextPiece(), legalMoves);
+	}
+	
+	//pickMove for a bare board - for callers that keep games outside a State, like BatchSimulator
+	int pickMove(BitBoard board, int piece, int[][] legalMoves) {
 		int bestMove = 0;
 		double maxSoFar = Integer.MIN_VALUE;
+		NextState ns = scratch;
+		ns.reset(board, piece, 0);
 		for (int i = 0; i < legalMoves.length; i++)
 		{
-			NextState ns = new NextState(s.getField(), s.getTop(), s.getNextPiece());
-			ns.makeMove(i); //Make move for each legal move
+			ns.applyMove(i, undo[0]); //Make move for each legal move
 			double currValue = getHeuristic(ns);
+			ns.undoMove(undo[0]);
 			if (currValue > maxSoFar)
 			{
 				maxSoFar = currValue;
@@ -48,19 +103,218 @@ public class PlayerSkeleton {
 	//The idea is as described in the report.
 	public int pickMoveLookahead(State s, int[][] legalMoves) 
 	{
+		long weightsKey = 0;
+		if (moveCache != null)
+		{
+			weightsKey = MoveCache.weightsKey(weights, LOOKAHEAD_SEARCH);
+			int cached = moveCache.lookup(s.getBoard(), s.getNextPiece(), weightsKey, legalMoves.length);
+			if (cached >= 0)
+				return cached;
+		}
+		int bestMove = 0;
+		double maxSoFar = Integer.MIN_VALUE;
+		NextState ns = scratch;
+		ns.reset(s.getBoard(), s.getNextPiece(), 0);
+		for (int i = 0; i < legalMoves.length; i++)
+		{
+			ns.applyMove(i, undo[0]);
+			double currValue = 0;
+			if (ns.hasLost())
+			{
+				//every piece after a losing move is lost too
+				currValue = Integer.MIN_VALUE;
+			}
+			else
+			{
+				//Since we don't know the next piece, try each of the pieces, then average fitness across every possible piece
+				for (int j = 0; j < State.N_PIECES; j++)
+				{
+					currValue += lookaheadMove(ns, j);
+				}
+				currValue/=State.N_PIECES;
+			}
+			ns.undoMove(undo[0]);
+			if (currValue > maxSoFar)
+			{
+				maxSoFar = currValue;
+				bestMove = i;
+			}
+		}
+		if (moveCache != null)
+			moveCache.store(s.getBoard(), s.getNextPiece(), weightsKey, bestMove);
+		return bestMove;
+	}
+	
+	//pickMove over every placement the piece can reach, including slides and tucks under
+	//overhangs, not just the straight drops - see ReachableMoves.
+	//Returns an index into getReachableMoves(); play it with
+	//s.makeMoveAt(m.orient[i], m.slot[i], m.height[i]).
+	public int pickMoveReachable(State s)
+	{
+		if (reachable == null)
+		{
+			reachable = new ReachableMoves();
+			reachableMoves = new ReachableMoves.Moves();
+		}
+		ReachableMoves.Moves m = reachableMoves;
+		int piece = s.getNextPiece();
+		reachable.generate(s.getBoard(), piece, m);
+		int bestMove = 0;
+		double maxSoFar = Integer.MIN_VALUE;
+		NextState ns = scratch;
+		ns.reset(s.getBoard(), piece, 0);
+		for (int i = 0; i < m.count; i++)
+		{
+			ns.applyMoveAt(piece, m.orient[i], m.slot[i], m.height[i], undo[0]);
+			double currValue = getHeuristic(ns, features);
+			ns.undoMove(undo[0]);
+			if (currValue > maxSoFar)
+			{
+				maxSoFar = currValue;
+				bestMove = i;
+			}
+		}
+		return bestMove;
+	}
+	
+	//placements found by the last pickMoveReachable
+	public ReachableMoves.Moves getReachableMoves()
+	{
+		return reachableMoves;
+	}
+	
+	//Same move as pickMove, but candidates stop being evaluated as soon as their
+	//partial heuristic shows they cannot beat the best so far - see BoundedEvaluator
+	public int pickMoveBounded(State s, int[][] legalMoves)
+	{
+		BoundedEvaluator eval = getBoundedEvaluator();
+		eval.prepare();
 		int bestMove = 0;
 		double maxSoFar = Integer.MIN_VALUE;
+		NextState ns = scratch;
+		ns.reset(s.getBoard(), s.getNextPiece(), 0);
 		for (int i = 0; i < legalMoves.length; i++)
 		{
-			NextState ns = new NextState(s.getField(), s.getTop(), s.getNextPiece(), 0);
-			ns.makeMove(i);
+			ns.applyMove(i, undo[0]);
+			double currValue = eval.evaluate(ns, maxSoFar);
+			ns.undoMove(undo[0]);
+			if (currValue > maxSoFar)
+			{
+				maxSoFar = currValue;
+				bestMove = i;
+			}
+		}
+		return bestMove;
+	}
+	
+	//counters for pickMoveBounded live on the evaluator
+	public BoundedEvaluator getBoundedEvaluator()
+	{
+		if (bounded == null)
+			bounded = new BoundedEvaluator(weights);
+		return bounded;
+	}
+	
+	//pickMoveLookahead that only runs the second ply under promising root moves.
+	//Every root move is scored at 1-ply first. Losing moves are dropped, and only the best
+	//pruneTopK (plus any within pruneMargin of the best) are expanded over the 7 next pieces.
+	public int pickMoveLookaheadPruned(State s, int[][] legalMoves)
+	{
+		NextState ns = scratch;
+		ns.reset(s.getBoard(), s.getNextPiece(), 0);
+		
+		//1-ply scores
+		int n = legalMoves.length;
+		int live = 0;
+		int bestMove = 0;
+		double best1Ply = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++)
+		{
+			ns.applyMove(i, undo[0]);
+			double currValue = getHeuristic(ns);
+			ns.undoMove(undo[0]);
+			rootScores[i] = currValue;
+			if (currValue > Integer.MIN_VALUE)
+				sortedScores[live++] = currValue;
+			if (currValue > best1Ply)
+			{
+				best1Ply = currValue;
+				bestMove = i;
+			}
+		}
+		//every move loses
+		if (live == 0)
+			return bestMove;
+		
+		//score a root move needs to be among the top K
+		Arrays.sort(sortedScores, 0, live);
+		//always expand at least the best move, and never more than there are
+		int k = Math.max(1, Math.min(pruneTopK, live));
+		double cutoff = sortedScores[live - k];
+		if (pruneMargin >= 0)
+			cutoff = Math.min(cutoff, best1Ply - pruneMargin);
+		
+		double maxSoFar = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++)
+		{
+			if (rootScores[i] == Integer.MIN_VALUE || rootScores[i] < cutoff)
+				continue;
+			ns.applyMove(i, undo[0]);
 			double currValue = 0;
-			//Since we don't know the next piece, try each of the pieces, then average fitness across every possible piece
 			for (int j = 0; j < State.N_PIECES; j++)
 			{
 				currValue += lookaheadMove(ns, j);
 			}
 			currValue/=State.N_PIECES;
+			ns.undoMove(undo[0]);
+			if (currValue > maxSoFar)
+			{
+				maxSoFar = currValue;
+				bestMove = i;
+			}
+		}
+		return bestMove;
+	}
+	
+	//Same result as pickMoveLookahead, but the second ply under each root move is produced
+	//in one AfterstateGenerator call covering all 7 pieces instead of one lookaheadMove per piece
+	public int pickMoveLookaheadBulk(State s, int[][] legalMoves)
+	{
+		if (generator == null)
+		{
+			generator = new AfterstateGenerator();
+			afterstates = new AfterstateGenerator.Buffer();
+		}
+		AfterstateGenerator.Buffer buf = afterstates;
+		int bestMove = 0;
+		double maxSoFar = Integer.MIN_VALUE;
+		NextState ns = scratch;
+		ns.reset(s.getBoard(), s.getNextPiece(), 0);
+		for (int i = 0; i < legalMoves.length; i++)
+		{
+			ns.applyMove(i, undo[0]);
+			double currValue = 0;
+			if (ns.hasLost())
+			{
+				currValue = Integer.MIN_VALUE;
+			}
+			else
+			{
+				generator.generate(ns.getBoard(), buf);
+				for (int j = 0; j < State.N_PIECES; j++)
+				{
+					double best = Integer.MIN_VALUE;
+					for (int k = buf.pieceStart[j]; k < buf.pieceStart[j+1]; k++)
+					{
+						double value = buf.lost[k] ? Integer.MIN_VALUE : getHeuristic(buf.features, k * Features.NUM_FEATURES);
+						if (value > best)
+							best = value;
+					}
+					currValue += best;
+				}
+				currValue/=State.N_PIECES;
+			}
+			ns.undoMove(undo[0]);
 			if (currValue > maxSoFar)
 			{
 				maxSoFar = currValue;
@@ -70,18 +324,71 @@ public class PlayerSkeleton {
 		return bestMove;
 	}
 	
+	//Same result as pickMoveLookahead, but the root moves and piece branches are searched
+	//in parallel on the common fork/join pool. Does not use the transposition cache.
+	public int pickMoveLookaheadParallel(State s, int[][] legalMoves)
+	{
+		if (parallel == null)
+			parallel = new ParallelLookahead(this);
+		return parallel.pickMove(s.getBoard(), s.getNextPiece(), legalMoves);
+	}
+	
+	//N-ply expectimax search: deepens one placement at a time up to searchDepth,
+	//and returns the move of the deepest search that finished within moveTimeMillis.
+	//With searchDepth 1 this picks the same move as pickMove, with 2 the same as pickMoveLookahead.
+	//If the State shows previews, those pieces are searched as known instead of averaged over.
+	public int pickMoveExpectimax(State s, int[][] legalMoves)
+	{
+		if (expectimax == null)
+			expectimax = new ExpectimaxSearch(this, searchDepth);
+		expectimax.maxDepth = searchDepth;
+		return expectimax.pickMove(s, legalMoves, moveTimeMillis);
+	}
+	
+	//Monte Carlo rollouts: each root move plays rollouts rollouts, each placing rolloutDepth
+	//sampled pieces greedily by getHeuristic, and is scored by how many of them it loses and
+	//the mean outcome of the rest. Rollouts run in
+	//parallel on the common fork/join pool - see MonteCarloSearch.
+	public int pickMoveMonteCarlo(State s, int[][] legalMoves)
+	{
+		if (monteCarlo == null)
+			monteCarlo = new MonteCarloSearch(this);
+		monteCarlo.rollouts = rollouts;
+		monteCarlo.rolloutDepth = rolloutDepth;
+		monteCarlo.budgetMillis = rolloutTimeMillis;
+		return monteCarlo.pickMove(s.getBoard(), s.getNextPiece(), legalMoves);
+	}
+	
+	//pickMoveLookahead with the next piece taken to be the worst one instead of averaged over,
+	//searched with alpha-beta to adversarialDepth placements - see AdversarialSearch
+	public int pickMoveAdversarial(State s, int[][] legalMoves)
+	{
+		AdversarialSearch search = getAdversarialSearch();
+		search.depth = adversarialDepth;
+		return search.pickMove(s.getBoard(), s.getNextPiece(), legalMoves);
+	}
+	
+	//node counters and the pruning switch for pickMoveAdversarial
+	public AdversarialSearch getAdversarialSearch()
+	{
+		if (adversarial == null)
+			adversarial = new AdversarialSearch(this, adversarialDepth);
+		return adversarial;
+	}
+	
 	//This function takes in a NextState and a piece number.
 	//It finds the best move to make and returns the heuristic value of the resulting state.
 	//This function was used to implement 2-ply search as described in the report.
+	//Each move is applied to ns and undone again, so ns is unchanged when this returns.
 	public double lookaheadMove(NextState ns, int piece)
 	{
 		int[][] legalMoves = ns.legalMoves(piece);
 		double maxSoFar = Integer.MIN_VALUE;
 		for (int i = 0; i < legalMoves.length; i++)
 		{
-			NextState las = new NextState(ns.getField(), ns.getTop(), piece, ns.getRowsCleared());
-			las.makeMove(i);
-			double currValue = getHeuristic(las);
+			ns.applyMove(piece, legalMoves[i][NextState.ORIENT], legalMoves[i][NextState.SLOT], undo[1]);
+			double currValue = getCachedHeuristic(ns);
+			ns.undoMove(undo[1]);
 			if (currValue > maxSoFar)
 			{
 				maxSoFar = currValue;
@@ -93,9 +400,34 @@ public class PlayerSkeleton {
 	//run this to have no UI show the game being played
 	public int run()
 	{
-		State s = new State();
-		for (int i = 0;!s.hasLost(); i++)
+		return run(new State());
+	}
+	
+	//plays a game to the end with the given pieces, e.g. a sequence shared by several players
+	public int run(PieceSource pieces)
+	{
+		return run(new State(pieces));
+	}
+	
+	//plays a game until it is lost or maxPieces pieces or maxMillis ms are used up (0 for no limit)
+	//so one very good player cannot hold up everything waiting for it
+	public int run(PieceSource pieces, long maxPieces, long maxMillis)
+	{
+		return run(new State(pieces), maxPieces, maxMillis);
+	}
+	
+	private int run(State s)
+	{
+		return run(s, 0, 0);
+	}
+	
+	private int run(State s, long maxPieces, long maxMillis)
+	{
+		long deadline = maxMillis > 0 ? System.nanoTime() + maxMillis * 1000000L : Long.MAX_VALUE;
+		for (long i = 0; !s.hasLost(); i++)
 		{
+			if ((maxPieces > 0 && i >= maxPieces) || System.nanoTime() >= deadline)
+				break;
 			s.makeMove(this.pickMove(s, s.legalMoves()));
 		}
 		System.out.println("You have completed "+s.getRowsCleared()+" rows.");
@@ -127,421 +459,118 @@ public class PlayerSkeleton {
 	}
 	
 	public double getHeuristic(NextState ns)
+	{
+		return getHeuristic(ns, features);
+	}
+	
+	//heuristic of a feature vector already computed at features[offset], e.g. by AfterstateGenerator
+	//the state must not be lost
+	public double getHeuristic(double[] features, int offset)
+	{
+		double heuristic = 0;
+		heuristic += weights[0] * features[offset + Features.ROW_TRANSITIONS];
+		heuristic += weights[1] * features[offset + Features.COL_TRANSITIONS];
+		heuristic += weights[2] * features[offset + Features.HOLES];
+		heuristic += weights[3] * features[offset + Features.WELLS];
+		heuristic += weights[4] * features[offset + Features.MAX_HEIGHT];
+		heuristic += weights[5] * features[offset + Features.ROWS_CLEARED];
+		return heuristic;
+	}
+	
+	//getHeuristic with a caller-owned feature buffer, so several threads can evaluate at once
+	public double getHeuristic(NextState ns, double[] features)
 	{
 		double heuristic = 0;
 		//if is lost, then return minimum possible value
 		if (ns.hasLost())
 			return Integer.MIN_VALUE;
-		heuristic += weights[0] * ns.getRowTransition();
-		heuristic += weights[1] * ns.getColTransition();
-		heuristic += weights[2] * ns.getHoles();
-		heuristic += weights[3] * ns.wellFeature();
-		heuristic += weights[4] * ns.getMaxColumnHeight();
-		heuristic += weights[5] * ns.getRowsCleared();
+		ns.getFeatures(features);
+		heuristic += weights[0] * features[Features.ROW_TRANSITIONS];
+		heuristic += weights[1] * features[Features.COL_TRANSITIONS];
+		heuristic += weights[2] * features[Features.HOLES];
+		heuristic += weights[3] * features[Features.WELLS];
+		heuristic += weights[4] * features[Features.MAX_HEIGHT];
+		heuristic += weights[5] * features[Features.ROWS_CLEARED];
 		return heuristic;
 	}
 	
-	public void printGrid(NextState ns)
+	//getHeuristic through the transposition cache, if there is one
+	public double getCachedHeuristic(NextState ns)
 	{
-		int[][] grid = ns.getField();
-		for (int i = grid.length-1; i >= 0; i--)
+		if (cache == null || ns.hasLost())
+			return getHeuristic(ns);
+		double value = cache.probe(ns.getBoard());
+		if (Double.isNaN(value))
 		{
-			for (int j = 0; j < grid[i].length; j++)
-			{
-				System.out.print(grid[i][j] + " " );
-			}
-			System.out.println();
+			value = getHeuristic(ns);
+			cache.storeProbed(value);
 		}
+		return value;
 	}
 	
-	public void setWeights(double[] newWeights)
+	//cache lookahead leaf values across moves and decisions, in a table of the given capacity
+	public void enableCache(int capacity)
 	{
-		for (int i = 0; i < newWeights.length; i++)
-			weights[i] = newWeights[i];
-	}
-	
-}
-
-class NextState {
-	public static final int COLS = 10;
-	public static final int ROWS = 21;
-	public static final int N_PIECES = 7;
-
-	public boolean lost = false;
-	
-	//current turn
-	private int turn = 0;
-	private int cleared = 0;
-	
-	//each square in the grid - int means empty - other values mean the turn it was placed
-	private int[][] field = new int[ROWS][COLS];
-	//top row+1 of each column
-	//0 means empty
-	private int[] top = new int[COLS];
-	
-	
-	//number of next piece
-	protected int nextPiece;
-	
-	//all legal moves - first index is piece type - then a list of 2-length arrays
-	protected static int[][][] legalMoves = new int[N_PIECES][][];
-	
-	//indices for legalMoves
-	public static final int ORIENT = 0;
-	public static final int SLOT = 1;
-	
-	//possible orientations for a given piece type
-	protected static int[] pOrients = {1,2,4,4,4,2,2};
-	
-	//the next several arrays define the piece vocabulary in detail
-	//width of the pieces [piece ID][orientation]
-	protected static int[][] pWidth = {
-			{2},
-			{1,4},
-			{2,3,2,3},
-			{2,3,2,3},
-			{2,3,2,3},
-			{3,2},
-			{3,2}
-	};
-	//height of the pieces [piece ID][orientation]
-	private static int[][] pHeight = {
-			{2},
-			{4,1},
-			{3,2,3,2},
-			{3,2,3,2},
-			{3,2,3,2},
-			{2,3},
-			{2,3}
-	};
-	private static int[][][] pBottom = {
-		{{0,0}},
-		{{0},{0,0,0,0}},
-		{{0,0},{0,1,1},{2,0},{0,0,0}},
-		{{0,0},{0,0,0},{0,2},{1,1,0}},
-		{{0,1},{1,0,1},{1,0},{0,0,0}},
-		{{0,0,1},{1,0}},
-		{{1,0,0},{0,1}}
-	};
-	private static int[][][] pTop = {
-		{{2,2}},
-		{{4},{1,1,1,1}},
-		{{3,1},{2,2,2},{3,3},{1,1,2}},
-		{{1,3},{2,1,1},{3,3},{2,2,2}},
-		{{3,2},{2,2,2},{2,3},{1,2,1}},
-		{{1,2,2},{3,2}},
-		{{2,2,1},{2,3}}
-	};
-	
-	//initialize legalMoves
-	{
-		//for each piece type
-		for(int i = 0; i < N_PIECES; i++) {
-			//figure number of legal moves
-			int n = 0;
-			for(int j = 0; j < pOrients[i]; j++) {
-				//number of locations in this orientation
-				n += COLS+1-pWidth[i][j];
-			}
-			//allocate space
-			legalMoves[i] = new int[n][2];
-			//for each orientation
-			n = 0;
-			for(int j = 0; j < pOrients[i]; j++) {
-				//for each slot
-				for(int k = 0; k < COLS+1-pWidth[i][j];k++) {
-					legalMoves[i][n][ORIENT] = j;
-					legalMoves[i][n][SLOT] = k;
-					n++;
-				}
-			}
-		}
-	}
-	
-	
-	public int[][] getField() {
-		return field;
-	}
-
-	public int[] getTop() {
-		return top;
-	}
-
-    public static int[] getpOrients() {
-        return pOrients;
-    }
-    
-    public static int[][] getpWidth() {
-        return pWidth;
-    }
-
-    public static int[][] getpHeight() {
-        return pHeight;
-    }
-
-    public static int[][][] getpBottom() {
-        return pBottom;
-    }
-
-    public static int[][][] getpTop() {
-        return pTop;
-    }
-
-
-	public int getNextPiece() {
-		return nextPiece;
-	}
-	
-	public boolean hasLost() {
-		return lost;
-	}
-	
-	public int getRowsCleared() {
-		return cleared;
+		cache = new TranspositionCache(capacity);
 	}
 	
-	public int getTurnNumber() {
-		return turn;
-	}
-	
-	//constructor
-	public NextState() {
-	}
-	
-	//Populating the nextState field
-	public NextState(int[][] grid, int[] oldTop, int nPiece)
+	public void disableCache()
 	{
-		for (int r = 0; r < ROWS; r++)
-		{
-			for (int c = 0; c < COLS; c++)
-			{
-				field[r][c] = grid[r][c];
-			}
-		}
-		for (int c = 0; c < COLS; c++)
-			top[c] = oldTop[c];
-		nextPiece = nPiece;
+		cache = null;
 	}
 	
-	//Constructor overload for lookahead
-	public NextState(int[][] grid, int[] oldTop, int nPiece, int rCleared)
+	//hit/miss counters live on the cache - null if caching is off
+	public TranspositionCache getCache()
 	{
-		for (int r = 0; r < ROWS; r++)
-		{
-			for (int c = 0; c < COLS; c++)
-			{
-				field[r][c] = grid[r][c];
-			}
-		}
-		for (int c = 0; c < COLS; c++)
-			top[c] = oldTop[c];
-		nextPiece = nPiece;
-		cleared = rCleared;
-	}
-	
-	//gives legal moves for 
-	public int[][] legalMoves() {
-		return legalMoves[nextPiece];
-	}
-	
-	//gives legal moves for input piece
-	public int[][] legalMoves(int n) {
-		return legalMoves[n];
-	}
-	
-	//make a move based on the move index - its order in the legalMoves list
-	public void makeMove(int move) {
-		makeMove(legalMoves[nextPiece][move]);
-	}
-	
-	//make a move based on an array of orient and slot
-	public void makeMove(int[] move) {
-		makeMove(move[ORIENT],move[SLOT]);
-	}
-	
-	//returns false if you lose - true otherwise
-	public boolean makeMove(int orient, int slot) {
-		turn++;
-		//height if the first column makes contact
-		int height = top[slot]-pBottom[nextPiece][orient][0];
-		//for each column beyond the first in the piece
-		for(int c = 1; c < pWidth[nextPiece][orient];c++) 
-		{
-			try
-			{
-				height = Math.max(height,top[slot+c]-pBottom[nextPiece][orient][c]);
-			}
-			catch (ArrayIndexOutOfBoundsException oobe)
-			{
-				System.out.println(slot + " " + c + " " + nextPiece + " " + orient + " " + c);
-			}
-		}
-		
-		//check if game ended
-		if(height+pHeight[nextPiece][orient] >= ROWS) {
-			lost = true;
-			return false;
-		}
-
-		
-		//for each column in the piece - fill in the appropriate blocks
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
-			
-			//from bottom to top of brick
-			for(int h = height+pBottom[nextPiece][orient][i]; h < height+pTop[nextPiece][orient][i]; h++) {
-				field[h][i+slot] = turn;
-			}
-		}
-		
-		//adjust top
-		for(int c = 0; c < pWidth[nextPiece][orient]; c++) {
-			top[slot+c]=height+pTop[nextPiece][orient][c];
-		}
-		
-		int rowsCleared = 0;
-		
-		//check for full rows - starting at the top
-		for(int r = height+pHeight[nextPiece][orient]-1; r >= height; r--) {
-			//check all columns in the row
-			boolean full = true;
-			for(int c = 0; c < COLS; c++) {
-				if(field[r][c] == 0) {
-					full = false;
-					break;
-				}
-			}
-			//if the row was full - remove it and slide above stuff down
-			if(full) {
-				rowsCleared++;
-				cleared++;
-				//for each column
-				for(int c = 0; c < COLS; c++) {
-
-					//slide down all bricks
-					for(int i = r; i < top[c]; i++) {
-						field[i][c] = field[i+1][c];
-					}
-					//lower the top
-					top[c]--;
-					while(top[c]>=1 && field[top[c]-1][c]==0)	top[c]--;
-				}
-			}
-		}
-
-		return true;
+		return cache;
 	}
 	
-	public int getColumnHeight(int col)
+	//keep the moves pickMoveLookahead picks in a memory-mapped file that other runs and JVMs
+	//can share - see MoveCache. An existing file is reused.
+	public void enableMoveCache(String fileName, int capacity) throws IOException
 	{
-		return top[col];
+		moveCache = new MoveCache(fileName, capacity);
 	}
 	
-	//difference between col and col+1.
-	public int getColumnHeightDiff(int col)
+	public void disableMoveCache() throws IOException
 	{
-		return Math.abs(top[col] - top[col+1]);
+		if (moveCache != null)
+			moveCache.close();
+		moveCache = null;
 	}
 	
-	public int getMaxColumnHeight()
+	//hit/miss counters live on the cache - null if the move cache is off
+	public MoveCache getMoveCache()
 	{
-		int maxH = 0;
-		for (int i = 0; i < COLS; i++)
-			maxH = Math.max(maxH, top[i]);
-		return maxH;
+		return moveCache;
 	}
 	
-	public double getHoles()
+	public void printGrid(NextState ns)
 	{
-		
-		int[] top = getTop();
-		
-		int numHoles = 0;
-		for (int j = 0;  j < COLS;  j++) 
-		{
-			if (top[j] != 0) {
-				for (int i = top[j] - 1;  i >= 0;  i--) 
-				{
-					if (field[i][j] == 0) {
-						numHoles++;
-					}
-				}
-			}
-		}
-		return (double) numHoles * 10;
-	}
-	
-	//For each column, go to every row from bottom. Find the first hole and count number of blocks on this hole
-	public int getBlocksOnHoles(){
-	    int blocksOnHole = 0;
-	    int [] topOfEachColumn = getTop();
-	    for(int col = 0; col < COLS; col++)
+		int[][] grid = ns.getField();
+		for (int i = grid.length-1; i >= 0; i--)
 		{
-	        boolean foundHole = false;
-	        for(int row = 0; row <= topOfEachColumn[col]; row++)
+			for (int j = 0; j < grid[i].length; j++)
 			{
-	           if(!foundHole && field[row][col] == 0)
-			   {
-	               foundHole = true;
-               }
-               else if(foundHole && field[row][col] != 0)
-			   {
-	               blocksOnHole++;
-               }
-            }
-        }
-	    return blocksOnHole;
-    }
-	
-	public double getRowTransition()
-	{
-		int rowTransitions = 0;
-		int lastCell = 1;
-		for (int i = 0;  i < ROWS;  i++) {
-			for (int j = 0;  j < COLS;  j++) {
-				if ((field[i][j] == 0) != (lastCell == 0)) {
-					rowTransitions++;
-				}
-				lastCell = field[i][j];
+				System.out.print(grid[i][j] + " " );
 			}
-			if (lastCell == 0) rowTransitions++;
+			System.out.println();
 		}
-		return (double) rowTransitions;
 	}
 	
-	public double getColTransition()
+	//maintain the search board's features incrementally as moves are applied and undone
+	public void setIncrementalFeatures(boolean on)
 	{
-		int colTransitions = 0;
-		for (int j = 0;  j < State.COLS;  j++) {
-			for (int i = top[j] - 2;  i >= 0;  i--) {
-				if ((field[i][j] == 0) != (field[i + 1][j] == 0)) {
-					colTransitions++;
-				}
-			}
-			if (field[0][j] == 0 && top[j] > 0) colTransitions++;
-		}
-		return (double) colTransitions;
+		scratch.setIncremental(on);
 	}
 	
-	public double wellFeature()
+	public void setWeights(double[] newWeights)
 	{
-		int wellSum = 0;
-		for (int j = 0;  j < COLS;  j++) {
-			for (int i = ROWS -1;  i >= 0;  i--) {
-				if (field[i][j] == 0) {
-					if (j == 0 || field[i][j - 1] != 0) {
-						if (j == State.COLS - 1 || field[i][j + 1] != 0) {
-							int wellHeight = i - top[j] + 1;
-							wellSum += wellHeight * (wellHeight + 1) / 2;
-						}
-					}
-				} else {
-					break;
-				}
-			}
-		}
-		return (double) wellSum;
+		for (int i = 0; i < newWeights.length; i++)
+			weights[i] = newWeights[i];
+		//cached values were computed with the old weights
+		if (cache != null)
+			cache.clear();
 	}
 	
 }
-
-
@@ -0,0 +1,159 @@
+//Move generator for every placement a piece can reach by moving left, right and down and
+//rotating, not just the straight drops in legalMoves - including slides and tucks under
+//overhangs.
+//
+//A position is (orientation, slot, height), height being the row of the piece's bottom
+//as in BitBoard.placeAt. For each orientation and row, the slots where the piece fits are a
+//COLS-bit mask, built from the row masks with shifts (free[orient][row]). The search then
+//runs over those masks instead of one position at a time: the piece can never move up,
+//so rows are visited once from the top down. At each row the reachable slots are those
+//reachable in the row above that still fit, closed under sliding left/right and rotating
+//(same slot and row, to the next or previous orientation) within the fitting slots.
+//Every reachable position that cannot move down is a placement.
+//
+//A board without holes has no overhangs, so its placements are exactly the straight drops,
+//which follow from the skyline alone - those skip the search.
+//
+//Rotation has no wall kicks and keeps the piece's bottom-left corner fixed.
+//Everything is preallocated; generate allocates nothing.
+class ReachableMoves {
+	public static final int COLS = BitBoard.COLS;
+	public static final int ROWS = BitBoard.ROWS;
+	//upper bound on placements of one piece - every orientation, slot and row
+	public static final int MAX_PLACEMENTS = 4 * COLS * ROWS;
+
+	//placements of one piece, filled in by generate(...)
+	public static class Moves {
+		public int count;
+		public int[] orient = new int[MAX_PLACEMENTS];
+		public int[] slot = new int[MAX_PLACEMENTS];
+		public int[] height = new int[MAX_PLACEMENTS];
+	}
+
+	//slots where orientation o fits with its bottom at row y
+	private int[][] free = new int[4][ROWS];
+	//reachable slots of the row being searched, and of the row above
+	private int[] reach = new int[4];
+	private int[] above = new int[4];
+
+	private long searched, dropsOnly;
+
+	//fills out with every placement of piece reachable on board, and returns how many there are
+	public int generate(BitBoard b, int piece, Moves out) {
+		int[] rows = b.rows;
+		int[] top = b.top;
+		int maxH = 0;
+		int underTops = 0;
+		for(int c = 0; c < COLS; c++) {
+			if(top[c] > maxH)	maxH = top[c];
+			underTops += top[c];
+		}
+		int filledCells = 0;
+		for(int i = 0; i < maxH; i++) {
+			filledCells += Integer.bitCount(rows[i]);
+		}
+
+		int n = 0;
+		int orients = PieceCatalog.pOrients[piece];
+
+		//no holes - only the straight drops
+		if(filledCells == underTops) {
+			dropsOnly++;
+			int[][] legalMoves = PieceCatalog.legalMoves[piece];
+			for(int i = 0; i < legalMoves.length; i++) {
+				int o = legalMoves[i][State.ORIENT];
+				int s = legalMoves[i][State.SLOT];
+				out.orient[n] = o;
+				out.slot[n] = s;
+				out.height[n] = b.landingHeight(piece, o, s);
+				n++;
+			}
+			out.count = n;
+			return n;
+		}
+		searched++;
+
+		//where each orientation fits in every row below maxH - from maxH up nothing is filled
+		for(int o = 0; o < orients; o++) {
+			int[] mask = PieceCatalog.pRowMask[piece][o];
+			int slots = (1 << (COLS - PieceCatalog.pWidth[piece][o] + 1)) - 1;
+			for(int y = 0; y < maxH; y++) {
+				int blocked = 0;
+				for(int h = 0; h < mask.length && y + h < ROWS; h++) {
+					int row = rows[y + h];
+					//slot x is blocked if bit c of the piece row meets bit x+c of the board row
+					for(int m = mask[h]; m != 0; m &= m - 1) {
+						blocked |= row >>> Integer.numberOfTrailingZeros(m);
+					}
+				}
+				free[o][y] = slots & ~blocked;
+			}
+			//every slot is reachable from above at maxH
+			above[o] = slots;
+		}
+
+		//the piece resting at maxH on anything below
+		for(int o = 0; o < orients; o++) {
+			int rest = maxH == 0 ? above[o] : above[o] & ~free[o][maxH-1];
+			n = emit(out, n, o, maxH, rest);
+		}
+
+		for(int y = maxH-1; y >= 0; y--) {
+			//straight down from the row above
+			for(int o = 0; o < orients; o++) {
+				reach[o] = above[o] & free[o][y];
+			}
+			//slides and rotations within this row until nothing changes
+			boolean changed = true;
+			while(changed) {
+				changed = false;
+				for(int o = 0; o < orients; o++) {
+					int f = free[o][y];
+					int r = reach[o];
+					if(orients > 1) {
+						r |= (reach[(o + 1) % orients] | reach[(o + orients - 1) % orients]) & f;
+					}
+					int prev;
+					do {
+						prev = r;
+						r |= ((r << 1) | (r >>> 1)) & f;
+					} while(r != prev);
+					if(r != reach[o]) {
+						reach[o] = r;
+						changed = true;
+					}
+				}
+			}
+			for(int o = 0; o < orients; o++) {
+				int rest = y == 0 ? reach[o] : reach[o] & ~free[o][y-1];
+				n = emit(out, n, o, y, rest);
+				above[o] = reach[o];
+			}
+		}
+		out.count = n;
+		return n;
+	}
+
+	private static int emit(Moves out, int n, int o, int y, int slots) {
+		for(; slots != 0; slots &= slots - 1) {
+			out.orient[n] = o;
+			out.slot[n] = Integer.numberOfTrailingZeros(slots);
+			out.height[n] = y;
+			n++;
+		}
+		return n;
+	}
+
+	//boards that needed the search, and boards that only had straight drops
+	public long getSearched() {
+		return searched;
+	}
+
+	public long getDropsOnly() {
+		return dropsOnly;
+	}
+
+	public void resetCounters() {
+		searched = dropsOnly = 0;
+	}
+}
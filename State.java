@@ -20,123 +20,66 @@ public class State {
 	
 	//current turn
 	private int turn = 0;
-	private int cleared = 0;
 	
-	//each square in the grid - int means empty - other values mean the turn it was placed
-	private int[][] field = new int[ROWS][COLS];
-	//top row+1 of each column
-	//0 means empty
-	private int[] top = new int[COLS];
+	//the grid, one bit mask per row - see BitBoard
+	private BitBoard board = new BitBoard();
 	
 	
 	//number of next piece
 	protected int nextPiece;
 	
+	//where pieces come from - private to this game
+	private PieceSource pieces;
+	
+	//pieces already drawn from the source that come after nextPiece, oldest first
+	//kept as a ring buffer - previewSize of them are visible through getPreview
+	private int[] queue = new int[0];
+	private int queueHead = 0;
+	private int queued = 0;
+	private int previewSize = 0;
+	
 	
 	
 	//all legal moves - first index is piece type - then a list of 2-length arrays
-	protected static int[][][] legalMoves = new int[N_PIECES][][];
+	//shared with PieceCatalog - do not modify
+	protected static final int[][][] legalMoves = PieceCatalog.legalMoves;
 	
 	//indices for legalMoves
 	public static final int ORIENT = 0;
 	public static final int SLOT = 1;
 	
-	//possible orientations for a given piece type
-	protected static int[] pOrients = {1,2,4,4,4,2,2};
-	
-	//the next several arrays define the piece vocabulary in detail
-	//width of the pieces [piece ID][orientation]
-	protected static int[][] pWidth = {
-			{2},
-			{1,4},
-			{2,3,2,3},
-			{2,3,2,3},
-			{2,3,2,3},
-			{3,2},
-			{3,2}
-	};
-	//height of the pieces [piece ID][orientation]
-	private static int[][] pHeight = {
-			{2},
-			{4,1},
-			{3,2,3,2},
-			{3,2,3,2},
-			{3,2,3,2},
-			{2,3},
-			{2,3}
-	};
-	private static int[][][] pBottom = {
-		{{0,0}},
-		{{0},{0,0,0,0}},
-		{{0,0},{0,1,1},{2,0},{0,0,0}},
-		{{0,0},{0,0,0},{0,2},{1,1,0}},
-		{{0,1},{1,0,1},{1,0},{0,0,0}},
-		{{0,0,1},{1,0}},
-		{{1,0,0},{0,1}}
-	};
-	private static int[][][] pTop = {
-		{{2,2}},
-		{{4},{1,1,1,1}},
-		{{3,1},{2,2,2},{3,3},{1,1,2}},
-		{{1,3},{2,1,1},{3,3},{2,2,2}},
-		{{3,2},{2,2,2},{2,3},{1,2,1}},
-		{{1,2,2},{3,2}},
-		{{2,2,1},{2,3}}
-	};
-	
-	//initialize legalMoves
-	{
-		//for each piece type
-		for(int i = 0; i < N_PIECES; i++) {
-			//figure number of legal moves
-			int n = 0;
-			for(int j = 0; j < pOrients[i]; j++) {
-				//number of locations in this orientation
-				n += COLS+1-pWidth[i][j];
-			}
-			//allocate space
-			legalMoves[i] = new int[n][2];
-			//for each orientation
-			n = 0;
-			for(int j = 0; j < pOrients[i]; j++) {
-				//for each slot
-				for(int k = 0; k < COLS+1-pWidth[i][j];k++) {
-					legalMoves[i][n][ORIENT] = j;
-					legalMoves[i][n][SLOT] = k;
-					n++;
-				}
-			}
-		}
-	
-	}
-	
 	
+	//materialized from the bitboard on demand - 0 is empty, 1 is filled
 	public int[][] getField() {
-		return field;
+		return board.getField();
 	}
 
 	public int[] getTop() {
-		return top;
+		return board.getTop();
+	}
+
+	BitBoard getBoard() {
+		return board;
 	}
 
     public static int[] getpOrients() {
-        return pOrients;
+        return PieceCatalog.pOrients;
     }
     
     public static int[][] getpWidth() {
-        return pWidth;
+        return PieceCatalog.pWidth;
     }
 
     public static int[][] getpHeight() {
-        return pHeight;
+        return PieceCatalog.pHeight;
     }
 
     public static int[][][] getpBottom() {
-        return pBottom;
+        return PieceCatalog.pBottom;
     }
 
     public static int[][][] getpTop() {
-        return pTop;
+        return PieceCatalog.pTop;
     }
 
 
@@ -149,7 +92,7 @@ public class State {
 	}
 	
 	public int getRowsCleared() {
-		return cleared;
+		return board.cleared;
 	}
 	
 	public int getTurnNumber() {
@@ -160,13 +103,66 @@ public class State {
 	
 	//constructor
 	public State() {
+		this(new XoroshiroPieceSource());
+	}
+	
+	//same seed gives the same piece sequence
+	public State(long seed) {
+		this(new XoroshiroPieceSource(seed));
+	}
+	
+	public State(PieceSource pieces) {
+		this.pieces = pieces;
 		nextPiece = randomPiece();
-
+	}
+	
+	public PieceSource getPieceSource() {
+		return pieces;
+	}
+	
+	//show the k pieces after nextPiece through getPreview
+	//the piece sequence is the same whatever k is - previews are just drawn early
+	public void setPreviewSize(int k) {
+		if(k > queue.length) {
+			int[] grown = new int[k];
+			for(int i = 0; i < queued; i++) {
+				grown[i] = queue[(queueHead + i) % queue.length];
+			}
+			queue = grown;
+			queueHead = 0;
+		}
+		previewSize = k;
+		fillQueue();
+	}
+	
+	public int getPreviewSize() {
+		return previewSize;
+	}
+	
+	//the piece i+1 turns after nextPiece - getPreview(0) is the one after nextPiece
+	public int getPreview(int i) {
+		if(i < 0 || i >= previewSize) {
+			throw new IndexOutOfBoundsException("preview " + i + " of " + previewSize);
+		}
+		return queue[(queueHead + i) % queue.length];
+	}
+	
+	private void fillQueue() {
+		while(queued < previewSize) {
+			queue[(queueHead + queued) % queue.length] = pieces.nextPiece();
+			queued++;
+		}
 	}
 	
 	//random integer, returns 0-6
+	//taken from the preview queue first, so previewed pieces arrive in order
 	private int randomPiece() {
-		return (int)(Math.random()*N_PIECES);
+		if(queued == 0)	return pieces.nextPiece();
+		int piece = queue[queueHead];
+		queueHead = (queueHead + 1) % queue.length;
+		queued--;
+		fillQueue();
+		return piece;
 	}
 	
 
@@ -190,70 +186,30 @@ public class State {
 	//returns false if you lose - true otherwise
 	public boolean makeMove(int orient, int slot) {
 		turn++;
-		//height if the first column makes contact
-		int height = top[slot]-pBottom[nextPiece][orient][0];
-		//for each column beyond the first in the piece
-		for(int c = 1; c < pWidth[nextPiece][orient];c++) {
-			height = Math.max(height,top[slot+c]-pBottom[nextPiece][orient][c]);
-		}
-		
-		//check if game ended
-		if(height+pHeight[nextPiece][orient] >= ROWS) {
+		if(!board.place(nextPiece, orient, slot)) {
 			lost = true;
 			return false;
 		}
 
+		//pick a new piece
+		nextPiece = randomPiece();
 		
-		//for each column in the piece - fill in the appropriate blocks
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
-			
-			//from bottom to top of brick
-			for(int h = height+pBottom[nextPiece][orient][i]; h < height+pTop[nextPiece][orient][i]; h++) {
-				field[h][i+slot] = turn;
-			}
-		}
-		
-		//adjust top
-		for(int c = 0; c < pWidth[nextPiece][orient]; c++) {
-			top[slot+c]=height+pTop[nextPiece][orient][c];
-		}
-		
-		int rowsCleared = 0;
-		
-		//check for full rows - starting at the top
-		for(int r = height+pHeight[nextPiece][orient]-1; r >= height; r--) {
-			//check all columns in the row
-			boolean full = true;
-			for(int c = 0; c < COLS; c++) {
-				if(field[r][c] == 0) {
-					full = false;
-					break;
-				}
-			}
-			//if the row was full - remove it and slide above stuff down
-			if(full) {
-				rowsCleared++;
-				cleared++;
-				//for each column
-				for(int c = 0; c < COLS; c++) {
-
-					//slide down all bricks
-					for(int i = r; i < top[c]; i++) {
-						field[i][c] = field[i+1][c];
-					}
-					//lower the top
-					top[c]--;
-					while(top[c]>=1 && field[top[c]-1][c]==0)	top[c]--;
-				}
-			}
-		}
+		return true;
+	}
 	
+	//places the piece with its bottom at row height instead of dropping it straight down,
+	//e.g. a tuck or slide from ReachableMoves - the position must be one the piece can rest in
+	//returns false if you lose - true otherwise
+	public boolean makeMoveAt(int orient, int slot, int height) {
+		turn++;
+		if(!board.placeAt(nextPiece, orient, slot, height, null)) {
+			lost = true;
+			return false;
+		}
 
 		//pick a new piece
 		nextPiece = randomPiece();
 		
-
-		
 		return true;
 	}
 	
@@ -268,9 +224,10 @@ public class State {
 		
 		//show bricks
 				
+		int[] top = board.getTop();
 		for(int c = 0; c < COLS; c++) {
 			for(int r = 0; r < top[c]; r++) {
-				if(field[r][c] != 0) {
+				if(board.filled(r,c)) {
 					drawBrick(c,r);
 				}
 			}
@@ -295,8 +252,8 @@ public class State {
 	}
 	
 	public void drawNext(int slot, int orient) {
-		for(int i = 0; i < pWidth[nextPiece][orient]; i++) {
-			for(int j = pBottom[nextPiece][orient][i]; j <pTop[nextPiece][orient][i]; j++) {
+		for(int i = 0; i < PieceCatalog.pWidth[nextPiece][orient]; i++) {
+			for(int j = PieceCatalog.pBottom[nextPiece][orient][i]; j <PieceCatalog.pTop[nextPiece][orient][i]; j++) {
 				drawBrick(i+slot, j+ROWS+1);
 			}
 		}
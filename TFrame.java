@@ -67,7 +67,7 @@ public class TFrame extends JFrame implements KeyListener{
 			case(MANUAL): {
 				switch(e.getKeyCode()) {
 					case(KeyEvent.VK_RIGHT): {
-						if(slot < State.COLS-State.pWidth[s.nextPiece][orient])	slot++;
+						if(slot < State.COLS-PieceCatalog.pWidth[s.nextPiece][orient])	slot++;
 						s.clearNext();
 						s.drawNext(slot, orient);
 						break;
@@ -80,18 +80,18 @@ public class TFrame extends JFrame implements KeyListener{
 					}
 					case(KeyEvent.VK_UP): {
 						orient++;
-						if(orient%State.pOrients[s.nextPiece]==0)	orient = 0;
-						if(slot > State.COLS-State.pWidth[s.nextPiece][orient])
-							slot = State.COLS-State.pWidth[s.nextPiece][orient];
+						if(orient%PieceCatalog.pOrients[s.nextPiece]==0)	orient = 0;
+						if(slot > State.COLS-PieceCatalog.pWidth[s.nextPiece][orient])
+							slot = State.COLS-PieceCatalog.pWidth[s.nextPiece][orient];
 						s.clearNext();
 						s.drawNext(slot, orient);
 						break;
 					}
 					case(KeyEvent.VK_DOWN): {
 						if(!s.makeMove(orient, slot))	mode = NONE;
-						if(orient >= State.pOrients[s.nextPiece])	orient = 0;
-						if(slot > State.COLS-State.pWidth[s.nextPiece][orient])
-							slot = State.COLS-State.pWidth[s.nextPiece][orient];
+						if(orient >= PieceCatalog.pOrients[s.nextPiece])	orient = 0;
+						if(slot > State.COLS-PieceCatalog.pWidth[s.nextPiece][orient])
+							slot = State.COLS-PieceCatalog.pWidth[s.nextPiece][orient];
 						
 						s.draw();
 						if(mode == NONE)	{
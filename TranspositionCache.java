@@ -0,0 +1,121 @@
+//Bounded cache from an afterstate to its heuristic value, for the lookahead search.
+//The key is the exact board - all ROWS row masks packed into four longs - plus the rows
+//cleared so far in the search, so a hit is never a different board that happened to hash
+//the same. Entries live in a primitive open-addressing table of fixed capacity.
+//
+//Eviction: a key may sit in its home slot or the PROBE_LIMIT-1 slots after it. If all of
+//those hold other keys, the new entry overwrites the home slot.
+//
+//Values are only meaningful for the weights they were computed with - clear() the cache
+//whenever the weights change.
+class TranspositionCache {
+	public static final int COLS = BitBoard.COLS;
+	public static final int ROWS = BitBoard.ROWS;
+	public static final int PROBE_LIMIT = 4;
+
+	//rows per packed long - 6 rows of 10 bits
+	private static final int ROWS_PER_WORD = 6;
+	private static final int WORDS = 4;
+	//set in the last key word of every used slot, so an all-zero board is still a valid key
+	private static final long USED = 1L << 63;
+
+	private int mask;
+	private long[] keys;
+	private double[] values;
+
+	//key and home slot of the last probe, for storeProbed
+	private long k0, k1, k2, k3;
+	private int home;
+
+	private long hits, misses, evictions;
+
+	//capacity is rounded up to a power of two
+	public TranspositionCache(int capacity) {
+		int cap = Integer.highestOneBit(Math.max(capacity, PROBE_LIMIT) - 1) << 1;
+		mask = cap - 1;
+		keys = new long[cap*WORDS];
+		values = new double[cap];
+	}
+
+	//cached value of the board, or NaN if it is not in the cache
+	//remembers the key so a miss can be filled with storeProbed(...)
+	public double probe(BitBoard b) {
+		int[] rows = b.rows;
+		k0 = pack(rows, 0);
+		k1 = pack(rows, ROWS_PER_WORD);
+		k2 = pack(rows, 2*ROWS_PER_WORD);
+		//the last word has 3 rows (30 bits), the cleared count goes above them
+		k3 = pack(rows, 3*ROWS_PER_WORD) | ((long) b.cleared << (3*COLS)) | USED;
+
+		long h = k0 * 0x9E3779B97F4A7C15L;
+		h = (h ^ k1) * 0xC2B2AE3D27D4EB4FL;
+		h = (h ^ k2) * 0x165667B19E3779F9L;
+		h = (h ^ k3) * 0x9E3779B97F4A7C15L;
+		home = (int)(h ^ (h >>> 32)) & mask;
+
+		for(int p = 0; p < PROBE_LIMIT; p++) {
+			int slot = (home + p) & mask;
+			int k = slot*WORDS;
+			if(keys[k+3] == k3 && keys[k] == k0 && keys[k+1] == k1 && keys[k+2] == k2) {
+				hits++;
+				return values[slot];
+			}
+		}
+		misses++;
+		return Double.NaN;
+	}
+
+	//store a value for the key of the last probe(...) that missed
+	public void storeProbed(double value) {
+		int target = home;
+		boolean found = false;
+		for(int p = 0; p < PROBE_LIMIT && !found; p++) {
+			int slot = (home + p) & mask;
+			if(keys[slot*WORDS+3] == 0) {
+				target = slot;
+				found = true;
+			}
+		}
+		if(!found)	evictions++;
+		int k = target*WORDS;
+		keys[k] = k0;
+		keys[k+1] = k1;
+		keys[k+2] = k2;
+		keys[k+3] = k3;
+		values[target] = value;
+	}
+
+	//drops every entry - the counters are kept
+	public void clear() {
+		java.util.Arrays.fill(keys, 0);
+	}
+
+	public void resetCounters() {
+		hits = misses = evictions = 0;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	private static long pack(int[] rows, int from) {
+		long w = 0;
+		int to = Math.min(from + ROWS_PER_WORD, ROWS);
+		for(int r = from; r < to; r++) {
+			w |= (long) rows[r] << (COLS*(r - from));
+		}
+		return w;
+	}
+}
@@ -0,0 +1,52 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+//Default PieceSource: a xoroshiro128++ generator private to one game.
+//Seeded through splitmix64, so any long (including 0) gives a well mixed state and
+//the same seed always gives the same piece sequence.
+class XoroshiroPieceSource implements PieceSource {
+	//gives unseeded sources distinct seeds even when created in the same nanosecond
+	private static final AtomicLong seedUniquifier = new AtomicLong(0x9E3779B97F4A7C15L);
+
+	private long s0, s1;
+
+	//seeded from the clock - for games that don't need to be reproduced
+	public XoroshiroPieceSource() {
+		this(seedUniquifier.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime());
+	}
+
+	public XoroshiroPieceSource(long seed) {
+		setSeed(seed);
+	}
+
+	//restart the sequence as if newly created with this seed
+	public void setSeed(long seed) {
+		s0 = splitMix64(seed);
+		s1 = splitMix64(seed + 0x9E3779B97F4A7C15L);
+	}
+
+	public int nextPiece() {
+		//top 32 bits scaled to 0..N_PIECES-1 without a division
+		return (int)(((nextLong() >>> 32) * State.N_PIECES) >>> 32);
+	}
+
+	public long nextLong() {
+		long a = s0;
+		long b = s1;
+		long result = Long.rotateLeft(a + b, 17) + a;
+		b ^= a;
+		s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+		s1 = Long.rotateLeft(b, 28);
+		return result;
+	}
+
+	//a new, independent generator seeded from this one - for handing out to other games or threads
+	public XoroshiroPieceSource split() {
+		return new XoroshiroPieceSource(nextLong());
+	}
+
+	private static long splitMix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
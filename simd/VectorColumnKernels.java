@@ -0,0 +1,106 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+//ColumnKernels on the jdk.incubator.vector API - loaded by name from ColumnKernels.vector().
+//Lanes are columns (features) or slots (landing rows); the 10 of them are covered in
+//ceil(10 / lanes) masked steps of the preferred species.
+//
+//build: javac --add-modules jdk.incubator.vector -d . simd/VectorColumnKernels.java
+//run:   java --add-modules jdk.incubator.vector ...
+class VectorColumnKernels extends ColumnKernels {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	private static final int LAST_COL = 1 << (COLS-1);
+
+	//column index of each lane, one vector per step of SPECIES.length() columns
+	private final IntVector[] column;
+	private final VectorMask<Integer>[] inRange;
+	private final int steps;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public VectorColumnKernels() {
+		steps = (COLS + SPECIES.length() - 1) / SPECIES.length();
+		column = new IntVector[steps];
+		inRange = new VectorMask[steps];
+		for(int s = 0; s < steps; s++) {
+			int from = s * SPECIES.length();
+			column[s] = IntVector.zero(SPECIES).addIndex(1).add(from);
+			inRange[s] = SPECIES.indexInRange(from, COLS);
+		}
+	}
+
+	public void landingHeights(int[] top, int[] bottom, int[] out) {
+		int slots = COLS - bottom.length + 1;
+		for(int from = 0; from < slots; from += SPECIES.length()) {
+			//slot lanes read top[slot+c], which stays below COLS for every valid slot
+			VectorMask<Integer> m = SPECIES.indexInRange(from, slots);
+			IntVector height = IntVector.fromArray(SPECIES, top, from, m).sub(bottom[0]);
+			for(int c = 1; c < bottom.length; c++) {
+				height = height.max(IntVector.fromArray(SPECIES, top, from + c, m).sub(bottom[c]));
+			}
+			height.intoArray(out, from, m);
+		}
+	}
+
+	public void extract(BitBoard b, double[] out, int offset) {
+		if(b.tracker != null) {
+			Features.extract(b, out, offset);
+			return;
+		}
+		int[] rows = b.rows;
+		int maxH = Features.maxHeight(b);
+
+		//holes, column transitions and wells per column, summed across lanes
+		int holes = 0;
+		int colTransitions = 0;
+		int wells = 0;
+		for(int s = 0; s < steps; s++) {
+			VectorMask<Integer> m = inRange[s];
+			IntVector col = column[s];
+			IntVector top = IntVector.fromArray(SPECIES, b.top, s * SPECIES.length(), m);
+			IntVector zero = IntVector.zero(SPECIES);
+			IntVector holeSum = zero;
+			IntVector transSum = zero;
+			IntVector wellSum = zero;
+			IntVector above = zero;
+			IntVector cell = zero;
+			for(int i = maxH-1; i >= 0; i--) {
+				int r = rows[i];
+				cell = IntVector.broadcast(SPECIES, r).lanewise(VectorOperators.LSHR, col).and(1);
+				VectorMask<Integer> underTop = top.compare(VectorOperators.GT, i, m);
+				//empty cells under the top of their column
+				holeSum = holeSum.add(cell.lanewise(VectorOperators.XOR, 1), underTop);
+				//filled/empty changes between this row and the one above
+				transSum = transSum.add(cell.lanewise(VectorOperators.XOR, above));
+				//empty cells at or above the top with both neighbours filled (or a wall)
+				IntVector left = IntVector.broadcast(SPECIES, (r << 1) | 1).lanewise(VectorOperators.LSHR, col);
+				IntVector right = IntVector.broadcast(SPECIES, (r >>> 1) | LAST_COL).lanewise(VectorOperators.LSHR, col);
+				VectorMask<Integer> well = left.and(right).and(1).compare(VectorOperators.NE, 0, m).andNot(underTop);
+				IntVector wellHeight = top.neg().add(i + 1);
+				wellSum = wellSum.add(wellHeight.mul(wellHeight.add(1)).lanewise(VectorOperators.ASHR, 1), well);
+				above = cell;
+			}
+			//the top of every non-empty column was counted once too often, and an empty
+			//floor cell under a non-empty column counts as one more
+			VectorMask<Integer> nonEmpty = top.compare(VectorOperators.GT, 0, m);
+			transSum = transSum.sub(1, nonEmpty).add(cell.lanewise(VectorOperators.XOR, 1), nonEmpty);
+			holes += holeSum.reduceLanes(VectorOperators.ADD, m);
+			colTransitions += transSum.reduceLanes(VectorOperators.ADD, m);
+			wells += wellSum.reduceLanes(VectorOperators.ADD, m);
+		}
+
+		//the row-wise features stay scalar - a row is already one int
+		out[offset+Features.ROW_TRANSITIONS] = Features.rowTransitions(b, maxH);
+		out[offset+Features.COL_TRANSITIONS] = colTransitions;
+		out[offset+Features.HOLES] = (double) holes * 10;
+		out[offset+Features.WELLS] = wells;
+		out[offset+Features.MAX_HEIGHT] = maxH;
+		out[offset+Features.ROWS_CLEARED] = b.cleared;
+		out[offset+Features.BLOCKS_ON_HOLES] = Features.blocksOnHoles(b, maxH);
+	}
+
+	public String getName() {
+		return "vector " + SPECIES.length() + " lanes";
+	}
+}